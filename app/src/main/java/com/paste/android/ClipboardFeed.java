@@ -0,0 +1,110 @@
+package com.paste.android;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The latest text shared from the phone, served to Linux clients that
+// long-poll GET /clipboard. Each clip gets a sequence number; a client
+// passes the last one it saw and is answered as soon as a different clip
+// exists. Numbers restart with the process, so any mismatch, not just a
+// higher number, counts as news.
+public class ClipboardFeed {
+    private static ClipboardFeed instance;
+
+    public static synchronized ClipboardFeed getInstance() {
+        if (instance == null) {
+            instance = new ClipboardFeed();
+        }
+        return instance;
+    }
+
+    public static class Clip {
+        private final long seq;
+        private final long time;
+        private final String text;
+
+        Clip(long seq, long time, String text) {
+            this.seq = seq;
+            this.time = time;
+            this.text = text;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private Clip latest;
+    private long nextSeq = 1;
+    private int waiting;
+
+    private ClipboardFeed() {
+    }
+
+    // Returns how many clients were waiting for it
+    public int publish(String text) {
+        int woken;
+        synchronized (this) {
+            latest = new Clip(nextSeq++, System.currentTimeMillis(), text);
+            woken = waiting;
+            notifyAll();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        return woken;
+    }
+
+    // Forgets the latest clip, e.g. when sharing is turned off
+    public synchronized void clear() {
+        latest = null;
+    }
+
+    // Listeners run on the publishing thread, e.g. to wake an event loop
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    // The latest clip unless the client has already seen it
+    public synchronized Clip since(long seq) {
+        return latest != null && latest.seq != seq ? latest : null;
+    }
+
+    // Blocks until there is a clip newer than seq, or returns null after timeoutMs
+    public synchronized Clip await(long seq, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        waiting++;
+        try {
+            Clip clip;
+            long remaining;
+            while ((clip = since(seq)) == null && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return clip;
+        } finally {
+            waiting--;
+        }
+    }
+
+    // Bookkeeping for clients that wait without holding a thread, see await()
+    public synchronized void enterWait() {
+        waiting++;
+    }
+
+    public synchronized void exitWait() {
+        waiting--;
+    }
+}
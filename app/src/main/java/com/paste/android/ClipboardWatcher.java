@@ -0,0 +1,116 @@
+package com.paste.android;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Hands every new clipboard text to a sender without a button tap. Bursts
+// of changes are debounced so only the last one is sent, and text whose hash
+// matches the last one sent (or the last one the app put on the clipboard
+// itself) is skipped. Android 10 and later only let the focused app read the
+// clipboard, so this runs while MainActivity is in the foreground, and
+// check() picks up anything copied while the app was in the background.
+public class ClipboardWatcher implements ClipboardManager.OnPrimaryClipChangedListener {
+    private static final long DEBOUNCE_DELAY = 150; // milliseconds
+
+    public interface Sender {
+        void send(String text);
+    }
+
+    private final Context context;
+    private final ClipboardManager clipboard;
+    private final SettingsManager settingsManager;
+    private final Sender sender;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private String pendingText;
+    private boolean running;
+
+    private final Runnable flush = this::flush;
+
+    public ClipboardWatcher(Context context, SettingsManager settingsManager, Sender sender) {
+        this.context = context;
+        this.clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+        this.settingsManager = settingsManager;
+        this.sender = sender;
+    }
+
+    public void start() {
+        if (!running) {
+            clipboard.addPrimaryClipChangedListener(this);
+            running = true;
+        }
+    }
+
+    public void stop() {
+        if (running) {
+            clipboard.removePrimaryClipChangedListener(this);
+            handler.removeCallbacks(flush);
+            pendingText = null;
+            running = false;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Text the app itself copied, e.g. received from Linux, is not sent back
+    public void markSent(String text) {
+        settingsManager.setLastSentClipHash(hashOf(text));
+    }
+
+    @Override
+    public void onPrimaryClipChanged() {
+        check();
+    }
+
+    // Reads the clipboard now; call once the window has focus
+    public void check() {
+        if (!running || !clipboard.hasPrimaryClip()) {
+            return;
+        }
+        ClipData clip = clipboard.getPrimaryClip();
+        if (clip == null || clip.getItemCount() == 0) {
+            return;
+        }
+        CharSequence text = clip.getItemAt(0).coerceToText(context);
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        pendingText = text.toString();
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, DEBOUNCE_DELAY);
+    }
+
+    private void flush() {
+        String text = pendingText;
+        pendingText = null;
+        if (text == null) {
+            return;
+        }
+        String hash = hashOf(text);
+        if (hash.equals(settingsManager.getLastSentClipHash())) {
+            return;
+        }
+        settingsManager.setLastSentClipHash(hash);
+        sender.send(text);
+    }
+
+    private static String hashOf(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.paste.android;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Streams a Content-Encoding compressed body into a fresh RequestBody.
+// The decoded size is capped so a small zip bomb cannot fill the disk.
+public class ContentDecoder {
+    private static final int CHUNK_SIZE = 16384;
+
+    private ContentDecoder() {
+    }
+
+    public static boolean isIdentity(String encoding) {
+        return encoding == null || encoding.isEmpty() || "identity".equalsIgnoreCase(encoding);
+    }
+
+    public static RequestBody decode(RequestBody encoded, String encoding, int memoryThreshold,
+                                     long maxDecodedLength, File spoolDir) throws IOException {
+        RequestBody decoded = new RequestBody((int) Math.min(encoded.length() * 4, memoryThreshold),
+                memoryThreshold, spoolDir);
+        try (InputStream in = openDecoder(encoded.openStream(), encoding.trim().toLowerCase(Locale.US))) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                if (decoded.length() + n > maxDecodedLength) {
+                    throw new HttpRequestParser.ParseException(413, "Payload Too Large",
+                            "Decompressed content exceeds " + maxDecodedLength + " bytes");
+                }
+                decoded.write(ByteBuffer.wrap(chunk, 0, n), n);
+            }
+            decoded.finish();
+            return decoded;
+        } catch (IOException e) {
+            decoded.discard();
+            throw e;
+        } finally {
+            encoded.discard();
+        }
+    }
+
+    private static InputStream openDecoder(InputStream in, String encoding) throws IOException {
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(in, CHUNK_SIZE);
+            case "deflate":
+                // RFC 9110 deflate is zlib-wrapped, but some senders use raw deflate
+                BufferedInputStream buffered = new BufferedInputStream(in, CHUNK_SIZE);
+                buffered.mark(2);
+                int b0 = buffered.read();
+                int b1 = buffered.read();
+                buffered.reset();
+                boolean zlib = b0 >= 0 && b1 >= 0 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+                return new OwnedInflaterInputStream(buffered, new Inflater(!zlib));
+            default:
+                in.close();
+                throw new HttpRequestParser.ParseException(415, "Unsupported Media Type",
+                        "Unsupported Content-Encoding: " + encoding + " (use gzip or deflate)");
+        }
+    }
+
+    // InflaterInputStream only ends inflaters it created itself; this one ends
+    // ours on close() so its native zlib memory is not held until finalization
+    private static class OwnedInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        OwnedInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, CHUNK_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.paste.android;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Optional fire-and-forget receive path for short pastes (one-off codes,
+// URLs): one UDP datagram per paste, no handshake and no reply.
+//
+//   'P' 'T'    magic
+//   u8  1      version
+//   u32 sender random per sender run
+//   u32 seq    increases by one per paste
+//   ... UTF-8 text
+//
+// Senders may transmit each datagram more than once to ride out loss; a
+// per-sender window of the last DEDUP_WINDOW sequence numbers drops the
+// copies. With a multicast group configured, the socket also joins it so a
+// single sender reaches every phone on the LAN; plain unicast to the port
+// keeps working either way.
+public class DatagramPasteReceiver {
+    private static final int HEADER_SIZE = 11; // magic, version, sender, seq
+    private static final byte VERSION = 1;
+    private static final int MAX_DATAGRAM = 65507; // largest UDP payload over IPv4
+    private static final int DEDUP_WINDOW = 64; // sequence numbers remembered per sender
+    private static final int MAX_SENDERS = 64;
+
+    private final int port;
+    private final String multicastGroup;
+    private final HttpServerService.OnTextReceivedListener listener;
+    // Least recently heard senders are forgotten first
+    private final Map<String, SeqWindow> senders = new LinkedHashMap<String, SeqWindow>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SeqWindow> eldest) {
+            return size() > MAX_SENDERS;
+        }
+    };
+
+    private volatile boolean running;
+    private DatagramSocket socket;
+    private Thread receiveThread;
+
+    // multicastGroup may be null for unicast only
+    public DatagramPasteReceiver(int port, String multicastGroup, HttpServerService.OnTextReceivedListener listener) {
+        this.port = port;
+        this.multicastGroup = multicastGroup;
+        this.listener = listener;
+    }
+
+    public void start() {
+        running = true;
+        receiveThread = new Thread(this::receiveLoop, "paste-udp");
+        receiveThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        // Unblocks receive()
+        DatagramSocket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void receiveLoop() {
+        try {
+            socket = openSocket();
+            if (!running) {
+                // stop() ran before the socket existed
+                return;
+            }
+            byte[] buffer = new byte[MAX_DATAGRAM];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (running) {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                String text = parse(packet);
+                if (text != null) {
+                    listener.onTextReceived(text);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    private DatagramSocket openSocket() throws IOException {
+        if (multicastGroup == null) {
+            DatagramSocket unicast = new DatagramSocket(null);
+            unicast.setReuseAddress(true);
+            unicast.bind(new InetSocketAddress(port));
+            return unicast;
+        }
+        MulticastSocket multicast = new MulticastSocket(port);
+        multicast.joinGroup(InetAddress.getByName(multicastGroup));
+        return multicast;
+    }
+
+    // Null for stray traffic, duplicates and empty pastes
+    private String parse(DatagramPacket packet) {
+        if (packet.getLength() <= HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer datagram = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+        if (datagram.get() != 'P' || datagram.get() != 'T' || datagram.get() != VERSION) {
+            return null;
+        }
+        int sender = datagram.getInt();
+        int seq = datagram.getInt();
+        String key = packet.getAddress().getHostAddress() + "/" + sender;
+        SeqWindow window = senders.get(key);
+        if (window == null) {
+            window = new SeqWindow(seq);
+            senders.put(key, window);
+        } else if (!window.accept(seq)) {
+            return null;
+        }
+        return new String(packet.getData(), datagram.position(), datagram.remaining(), StandardCharsets.UTF_8);
+    }
+
+    // Sliding window as in IPsec replay protection: bit i of seen marks
+    // highest - i as received. Anything older than the window is dropped.
+    private static class SeqWindow {
+        private int highest;
+        private long seen = 1;
+
+        SeqWindow(int first) {
+            highest = first;
+        }
+
+        boolean accept(int seq) {
+            // Signed difference so the u32 counter may wrap
+            int ahead = seq - highest;
+            if (ahead > 0) {
+                seen = ahead >= DEDUP_WINDOW ? 1 : (seen << ahead) | 1;
+                highest = seq;
+                return true;
+            }
+            int behind = -ahead;
+            if (behind >= DEDUP_WINDOW) {
+                return false;
+            }
+            long bit = 1L << behind;
+            if ((seen & bit) != 0) {
+                return false;
+            }
+            seen |= bit;
+            return true;
+        }
+    }
+}
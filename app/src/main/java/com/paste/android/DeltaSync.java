@@ -0,0 +1,180 @@
+package com.paste.android;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sync mode: each destination keeps one rolling file that is rewritten in
+// place. Per-block digests of what was last written let a send skip identical
+// content and overwrite only the blocks that changed, so appending to a long
+// log costs the new tail rather than the whole document. Remote size and
+// mtime are checked first; if anything else touched the file it is rewritten
+// in full.
+public class DeltaSync {
+    public static final String SYNC_FILENAME = "clipboard_sync.txt";
+    private static final int BLOCK_SIZE = 4096;
+
+    private static final DeltaSync INSTANCE = new DeltaSync();
+
+    public static DeltaSync getInstance() {
+        return INSTANCE;
+    }
+
+    private static class Snapshot {
+        final long length;
+        final byte[] digest;
+        final List<byte[]> blocks;
+        long mtime;
+
+        Snapshot(long length, byte[] digest, List<byte[]> blocks) {
+            this.length = length;
+            this.digest = digest;
+            this.blocks = blocks;
+        }
+    }
+
+    // What each remote file held after our last write, keyed by user@host:port/path
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private DeltaSync() {
+    }
+
+    // Returns false if the remote file already held this content
+    boolean sync(ChannelSftp sftp, String key, String remotePath, CharSequence content) throws SftpException {
+        Snapshot next = snapshot(content);
+        Snapshot previous = snapshots.get(key);
+        SftpATTRS attrs = statOrNull(sftp, remotePath);
+
+        boolean trusted = previous != null && attrs != null
+                && attrs.getSize() == previous.length && attrs.getMTime() == previous.mtime;
+        if (trusted && Arrays.equals(previous.digest, next.digest)) {
+            return false;
+        }
+
+        // Forget the old state first so a failure part-way forces a full rewrite
+        snapshots.remove(key);
+        if (!trusted || !writeChangedBlocks(sftp, remotePath, content, previous, next, attrs)) {
+            sftp.put(new Utf8InputStream(content, SshSessionPool.getInstance().getWriteBufferSize()),
+                    remotePath);
+        }
+
+        SftpATTRS written = sftp.stat(remotePath);
+        if (written.getSize() == next.length) {
+            next.mtime = written.getMTime();
+            snapshots.put(key, next);
+        }
+        return true;
+    }
+
+    // Overwrites runs of changed blocks at their offsets and truncates when
+    // the content shrank. Returns false if the server refused the truncation.
+    private boolean writeChangedBlocks(ChannelSftp sftp, String remotePath, CharSequence content,
+                                       Snapshot previous, Snapshot next, SftpATTRS attrs) throws SftpException {
+        long remoteSize = previous.length;
+        if (next.length < previous.length) {
+            // JSch cannot build fresh attributes, so resend the current ones with the new size
+            attrs.setSIZE(next.length);
+            try {
+                sftp.setStat(remotePath, attrs);
+            } catch (SftpException e) {
+                e.printStackTrace();
+                return false;
+            }
+            remoteSize = next.length;
+        }
+
+        byte[] block = new byte[BLOCK_SIZE];
+        OutputStream run = null;
+        try (InputStream in = new Utf8InputStream(content, BLOCK_SIZE)) {
+            for (int index = 0; ; index++) {
+                int length = readBlock(in, block);
+                if (length == 0) {
+                    break;
+                }
+                boolean changed = index >= previous.blocks.size()
+                        || !Arrays.equals(previous.blocks.get(index), next.blocks.get(index));
+                if (!changed) {
+                    if (run != null) {
+                        run.close();
+                        run = null;
+                    }
+                    continue;
+                }
+                if (run == null) {
+                    long position = (long) index * BLOCK_SIZE;
+                    // JSch only opens without truncating in append mode, where the
+                    // offset counts from the current end of file; shift it back
+                    run = sftp.put(remotePath, null, ChannelSftp.APPEND, position - remoteSize);
+                }
+                run.write(block, 0, length);
+                remoteSize = Math.max(remoteSize, (long) index * BLOCK_SIZE + length);
+            }
+            if (run != null) {
+                run.close();
+            }
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Delta write failed: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    private static Snapshot snapshot(CharSequence content) {
+        MessageDigest whole = digest("SHA-256");
+        MessageDigest perBlock = digest("SHA-1");
+        List<byte[]> blocks = new ArrayList<>();
+        byte[] block = new byte[BLOCK_SIZE];
+        long length = 0;
+        try (InputStream in = new Utf8InputStream(content, BLOCK_SIZE)) {
+            int n;
+            while ((n = readBlock(in, block)) > 0) {
+                whole.update(block, 0, n);
+                perBlock.update(block, 0, n);
+                blocks.add(perBlock.digest());
+                length += n;
+            }
+        } catch (IOException e) {
+            // Utf8InputStream never touches I/O
+            throw new IllegalStateException(e);
+        }
+        return new Snapshot(length, whole.digest(), blocks);
+    }
+
+    // Fills the buffer unless the content ends first; returns the bytes read
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int total = 0;
+        int n;
+        while (total < block.length && (n = in.read(block, total, block.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static SftpATTRS statOrNull(ChannelSftp sftp, String remotePath) throws SftpException {
+        try {
+            return sftp.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
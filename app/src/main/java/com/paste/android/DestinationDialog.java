@@ -29,6 +29,7 @@ public class DestinationDialog {
         EditText hostInput = dialogView.findViewById(R.id.destinationHost);
         EditText portInput = dialogView.findViewById(R.id.destinationPort);
         EditText directoryInput = dialogView.findViewById(R.id.destinationDirectory);
+        EditText keyInput = dialogView.findViewById(R.id.destinationKey);
 
         // Pre-fill if editing
         if (existing != null) {
@@ -37,6 +38,9 @@ public class DestinationDialog {
             hostInput.setText(existing.getHost());
             portInput.setText(String.valueOf(existing.getPort()));
             directoryInput.setText(existing.getDirectory());
+            if (existing.getKeyName() != null) {
+                keyInput.setText(existing.getKeyName());
+            }
         } else {
             portInput.setText("22");
         }
@@ -50,6 +54,7 @@ public class DestinationDialog {
                     String host = hostInput.getText().toString().trim();
                     String portStr = portInput.getText().toString().trim();
                     String directory = directoryInput.getText().toString().trim();
+                    String keyName = keyInput.getText().toString().trim();
 
                     if (name.isEmpty() || user.isEmpty() || host.isEmpty() || portStr.isEmpty() || directory.isEmpty()) {
                         Toast.makeText(context, "All fields are required", Toast.LENGTH_SHORT).show();
@@ -67,7 +72,20 @@ public class DestinationDialog {
                         return;
                     }
 
+                    // Blank means the default key
+                    if (keyName.isEmpty() || keyName.equals(SshKeyStore.DEFAULT_KEY)) {
+                        keyName = null;
+                    } else if (!SshKeyStore.isValidName(keyName)) {
+                        // Also keeps names like "../id_rsa" from pointing outside the key directory
+                        Toast.makeText(context, "Key names may only use letters, digits, '.', '_' and '-'", Toast.LENGTH_LONG).show();
+                        return;
+                    } else if (!SshKeyStore.getInstance(context).hasKey(keyName)) {
+                        Toast.makeText(context, "No SSH key named \"" + keyName + "\" has been imported", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+
                     LinuxDestination destination = new LinuxDestination(name, user, host, port, directory);
+                    destination.setKeyName(keyName);
                     listener.onDestinationSaved(destination);
                 })
                 .setNegativeButton("Cancel", null)
@@ -0,0 +1,151 @@
+package com.paste.android;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+// One row per destination with a stable id, so adding, editing or deleting a
+// host touches only its own row instead of rewriting the whole list.
+public class DestinationStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "destinations.db";
+    private static final int DATABASE_VERSION = 2;
+    private static final String TABLE = "destinations";
+    private static final String[] COLUMNS = {"id", "name", "user", "host", "port", "directory", "key_name"};
+
+    private static DestinationStore instance;
+
+    public static synchronized DestinationStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new DestinationStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DestinationStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "name TEXT NOT NULL, "
+                + "user TEXT NOT NULL, "
+                + "host TEXT NOT NULL, "
+                + "port INTEGER NOT NULL, "
+                + "directory TEXT NOT NULL, "
+                + "key_name TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN key_name TEXT");
+        }
+    }
+
+    // All destinations in the order they were added
+    public List<LinuxDestination> loadAll() {
+        List<LinuxDestination> destinations = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, null, null, null, null, "id")) {
+            while (cursor.moveToNext()) {
+                LinuxDestination destination = new LinuxDestination(
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getInt(4),
+                        cursor.getString(5));
+                destination.setId(cursor.getLong(0));
+                destination.setKeyName(cursor.getString(6));
+                destinations.add(destination);
+            }
+        }
+        return destinations;
+    }
+
+    // Inserts a new destination and assigns its id
+    public void insert(LinuxDestination destination) {
+        long id = getWritableDatabase().insert(TABLE, null, toValues(destination));
+        destination.setId(id);
+    }
+
+    public void update(LinuxDestination destination) {
+        getWritableDatabase().update(TABLE, toValues(destination), "id = ?",
+                new String[] {String.valueOf(destination.getId())});
+    }
+
+    public void delete(long id) {
+        getWritableDatabase().delete(TABLE, "id = ?", new String[] {String.valueOf(id)});
+    }
+
+    // Inserts many destinations in one transaction with one compiled statement,
+    // assigning their ids; used for imports
+    public void insertAll(List<LinuxDestination> destinations) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertRows(db, destinations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Like insertAll, but only into an empty table, checked in the same
+    // transaction; a migration interrupted after this succeeded cannot
+    // insert its rows twice. Returns whether anything was inserted.
+    public boolean insertAllIfEmpty(List<LinuxDestination> destinations) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.queryNumEntries(db, TABLE) > 0) {
+                return false;
+            }
+            insertRows(db, destinations);
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void insertRows(SQLiteDatabase db, List<LinuxDestination> destinations) {
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO " + TABLE + " (name, user, host, port, directory, key_name) VALUES (?, ?, ?, ?, ?, ?)");
+        try {
+            for (LinuxDestination destination : destinations) {
+                insert.clearBindings();
+                insert.bindString(1, destination.getName());
+                insert.bindString(2, destination.getUser());
+                insert.bindString(3, destination.getHost());
+                insert.bindLong(4, destination.getPort());
+                insert.bindString(5, destination.getDirectory());
+                if (destination.getKeyName() == null) {
+                    insert.bindNull(6);
+                } else {
+                    insert.bindString(6, destination.getKeyName());
+                }
+                destination.setId(insert.executeInsert());
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static ContentValues toValues(LinuxDestination destination) {
+        ContentValues values = new ContentValues();
+        values.put("name", destination.getName());
+        values.put("user", destination.getUser());
+        values.put("host", destination.getHost());
+        values.put("port", destination.getPort());
+        values.put("directory", destination.getDirectory());
+        values.put("key_name", destination.getKeyName());
+        return values;
+    }
+}
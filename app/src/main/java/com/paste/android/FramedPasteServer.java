@@ -0,0 +1,327 @@
+package com.paste.android;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Optional second listener for machine senders (log shippers and the like)
+// that speaks a binary framed protocol instead of HTTP. Every frame, in
+// both directions, is
+//
+//   u32 length   big-endian, counts the bytes after this field
+//   u8  type
+//   u32 id
+//   ... payload
+//
+// On connect the server sends HELLO with id = window, the most TEXT frames a
+// client may have unacknowledged. Clients send TEXT frames, one paste each,
+// with increasing ids; the server answers with cumulative ACKs (id = last
+// frame delivered) once per read or every half window, whichever comes
+// first. A bad frame is answered with ERROR (id = that frame, payload =
+// reason) and the connection is closed. Frames are decoded in place from
+// pooled direct buffers, and all texts from one read reach the listener as a
+// single onTextsReceived batch.
+public class FramedPasteServer {
+    public static final byte TYPE_TEXT = 0x01;
+    public static final byte TYPE_HELLO = (byte) 0x80;
+    public static final byte TYPE_ACK = (byte) 0x81;
+    public static final byte TYPE_ERROR = (byte) 0x82;
+
+    private static final int HEADER_SIZE = 9; // length, type, id
+    private static final int MAX_PAYLOAD = 65536; // 64KB, like MAX_CONTENT_LENGTH over HTTP
+    private static final int BUFFER_SIZE = HEADER_SIZE + MAX_PAYLOAD; // any frame fits whole
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final int WINDOW = 256; // frames
+    private static final int SELECT_TIMEOUT = 1000; // 1 second
+    private static final long IDLE_TIMEOUT = 5 * 60 * 1000; // 5 minutes
+
+    private final int port;
+    private final int backlog;
+    private final HttpServerService.OnTextReceivedListener listener;
+    private final ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    // Only the loop thread decodes
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread loopThread;
+
+    public FramedPasteServer(int port, int backlog, HttpServerService.OnTextReceivedListener listener) {
+        this.port = port;
+        this.backlog = backlog;
+        this.listener = listener;
+    }
+
+    public void start() {
+        running = true;
+        loopThread = new Thread(this::runLoop, "paste-framed-loop");
+        loopThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void runLoop() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port), backlog);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (running) {
+                selector.select(SELECT_TIMEOUT);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key);
+            key.attach(connection);
+            connection.send(TYPE_HELLO, WINDOW, null);
+            try {
+                connection.onWritable();
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                if (now - connection.lastActivity > IDLE_TIMEOUT) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void shutdown() {
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer readBuffer = bufferPool.acquire();
+        private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private final List<String> received = new ArrayList<>();
+        private boolean closeAfterWrite;
+        private int unacked;
+        private int lastId;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+
+            readBuffer.flip();
+            int dataLimit = readBuffer.limit();
+            while (!closeAfterWrite && readBuffer.remaining() >= 4) {
+                int start = readBuffer.position();
+                int length = readBuffer.getInt(start);
+                if (length < HEADER_SIZE - 4 || length > BUFFER_SIZE - 4) {
+                    fail(readBuffer.remaining() >= HEADER_SIZE ? readBuffer.getInt(start + 5) : 0,
+                            "Bad frame length " + length);
+                    break;
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+                byte type = readBuffer.get(start + 4);
+                int id = readBuffer.getInt(start + 5);
+                if (type != TYPE_TEXT) {
+                    fail(id, "Unknown frame type " + type);
+                    break;
+                }
+                // Decode straight out of the pooled buffer, no intermediate byte[]
+                int end = start + 4 + length;
+                readBuffer.limit(end).position(start + HEADER_SIZE);
+                String text;
+                try {
+                    text = decode(readBuffer);
+                } catch (CharacterCodingException e) {
+                    readBuffer.limit(dataLimit).position(start);
+                    fail(id, "Invalid UTF-8");
+                    break;
+                }
+                readBuffer.limit(dataLimit).position(end);
+                // Empty frames are acknowledged but not delivered
+                if (!text.isEmpty()) {
+                    received.add(text);
+                }
+                lastId = id;
+                if (++unacked >= WINDOW / 2) {
+                    deliverAndAck();
+                }
+            }
+            if (unacked > 0) {
+                deliverAndAck();
+            }
+            readBuffer.compact();
+
+            if (!pendingWrites.isEmpty()) {
+                onWritable();
+            }
+        }
+
+        private String decode(ByteBuffer payload) throws CharacterCodingException {
+            if (!payload.hasRemaining()) {
+                return "";
+            }
+            return decoder.decode(payload).toString();
+        }
+
+        // Texts before a bad frame are still delivered and acknowledged
+        private void fail(int id, String reason) {
+            if (unacked > 0) {
+                deliverAndAck();
+            }
+            send(TYPE_ERROR, id, reason);
+            closeAfterWrite = true;
+        }
+
+        private void deliverAndAck() {
+            if (received.size() == 1) {
+                listener.onTextReceived(received.get(0));
+            } else if (!received.isEmpty()) {
+                listener.onTextsReceived(new ArrayList<>(received));
+            }
+            received.clear();
+            unacked = 0;
+            send(TYPE_ACK, lastId, null);
+        }
+
+        void send(byte type, int id, String payload) {
+            byte[] bytes = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+            frame.putInt(HEADER_SIZE - 4 + bytes.length).put(type).putInt(id).put(bytes);
+            frame.flip();
+            pendingWrites.add(frame);
+        }
+
+        void onWritable() throws IOException {
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer head = pendingWrites.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                pendingWrites.poll();
+            }
+            lastActivity = System.currentTimeMillis();
+
+            if (pendingWrites.isEmpty()) {
+                if (closeAfterWrite) {
+                    close();
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else {
+                // Stop reading until the client drains its acks
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (readBuffer != null) {
+                bufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.paste.android;
+
+import java.util.Map;
+
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final String version;
+    private final Map<String, String> headers;
+    private final RequestBody body;
+
+    public HttpRequest(String method, String path, String version, Map<String, String> headers,
+                       RequestBody body) {
+        this.method = method;
+        this.path = path;
+        this.version = version;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // Header names are lower-case; only headers the parser knows about are kept
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    // HTTP/1.1 connections persist unless the client opts out; HTTP/1.0 only on request
+    public boolean isKeepAlive() {
+        String connection = headers.get("connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    public RequestBody getBody() {
+        return body;
+    }
+
+    public HttpRequest withBody(RequestBody decodedBody) {
+        return new HttpRequest(method, path, version, headers, decodedBody);
+    }
+}
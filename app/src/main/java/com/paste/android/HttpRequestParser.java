@@ -0,0 +1,382 @@
+package com.paste.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Incremental HTTP/1.1 request parser. Bytes can arrive in any split; parse()
+// consumes as much as it needs and leaves the rest in the buffer.
+// Header lines are parsed in place as they complete (single pass); only the
+// request line and the headers in KNOWN_HEADERS are turned into Strings.
+// Bodies are framed by Content-Length or Transfer-Encoding: chunked and
+// spill to spoolDir once they outgrow maxInMemoryLength.
+public class HttpRequestParser {
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final int MAX_CHUNK_LINE = 256;
+
+    // Headers the server acts on; everything else is skipped without allocating
+    private static final String[] KNOWN_HEADERS = {
+        "connection", "content-encoding", "content-length", "content-type", "transfer-encoding",
+        "x-paste-token"
+    };
+    private static final byte[][] KNOWN_HEADER_BYTES = toAscii(KNOWN_HEADERS);
+    private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+
+    private enum State { HEAD, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER, DONE }
+
+    public static class ParseException extends IOException {
+        private final int status;
+        private final String reason;
+
+        public ParseException(int status, String reason, String message) {
+            super(message);
+            this.status = status;
+            this.reason = reason;
+        }
+
+        public HttpResponse toResponse() {
+            return new HttpResponse(status, reason, getMessage());
+        }
+    }
+
+    private final int maxInMemoryLength;
+    private final long maxBodyLength;
+    private final File spoolDir;
+    private final byte[] line = new byte[MAX_HEADER_SIZE];
+    private int lineLength;
+    private int headSize;
+    private State state = State.HEAD;
+
+    private String method;
+    private String path;
+    private String version;
+    private Map<String, String> headers;
+    private long contentLength;
+    private boolean chunked;
+    private RequestBody body;
+    private long remaining;
+
+    public HttpRequestParser(int maxInMemoryLength, long maxBodyLength, File spoolDir) {
+        this.maxInMemoryLength = maxInMemoryLength;
+        this.maxBodyLength = Math.max(maxInMemoryLength, maxBodyLength);
+        this.spoolDir = spoolDir;
+    }
+
+    // Returns true once a full request has been read; fetch it with takeRequest()
+    public boolean parse(ByteBuffer buffer) throws IOException {
+        while (state != State.DONE && buffer.hasRemaining()) {
+            switch (state) {
+                case HEAD:
+                    if (readLine(buffer, MAX_HEADER_SIZE - headSize)) {
+                        headSize += lineLength;
+                        parseHeadLine();
+                    }
+                    break;
+                case BODY:
+                    int n = (int) Math.min(buffer.remaining(), remaining);
+                    body.write(buffer, n);
+                    consumedBody(n);
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buffer, MAX_CHUNK_LINE)) {
+                        parseChunkSize();
+                    }
+                    break;
+                case CHUNK_DATA:
+                    int chunk = (int) Math.min(buffer.remaining(), remaining);
+                    body.write(buffer, chunk);
+                    remaining -= chunk;
+                    if (remaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(buffer, MAX_CHUNK_LINE)) {
+                        lineLength = 0;
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    // Trailer fields are ignored; a blank line ends the message
+                    if (readLine(buffer, MAX_HEADER_SIZE)) {
+                        boolean blank = isBlankLine();
+                        lineLength = 0;
+                        if (blank) {
+                            finishBody();
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    // True while a Content-Length body is pending and can be read straight
+    // from the socket with readBody(), skipping the intermediate read buffer
+    public boolean isReadingBody() {
+        return state == State.BODY;
+    }
+
+    // True between requests, before any byte of the next one has arrived
+    public boolean isIdle() {
+        return state == State.HEAD && method == null && lineLength == 0;
+    }
+
+    // Returns the number of bytes read, or -1 at end of stream
+    public int readBody(InputStream in) throws IOException {
+        int n = body.readFrom(in, (int) Math.min(remaining, Integer.MAX_VALUE));
+        if (n > 0) {
+            consumedBody(n);
+        }
+        return n;
+    }
+
+    public HttpRequest takeRequest() {
+        HttpRequest request = new HttpRequest(method, path, version, headers, body);
+        body = null;
+        reset();
+        return request;
+    }
+
+    // Clears any partial request, deleting a half-written spool file
+    public void reset() {
+        if (body != null) {
+            body.discard();
+            body = null;
+        }
+        state = State.HEAD;
+        lineLength = 0;
+        headSize = 0;
+        method = null;
+        path = null;
+        version = null;
+        headers = null;
+        contentLength = 0;
+        chunked = false;
+        remaining = 0;
+    }
+
+    // Bulk-copies bytes up to and including the next LF into line; true once a full line is in
+    private boolean readLine(ByteBuffer buffer, int limit) throws ParseException {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int lf = -1;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                lf = i;
+                break;
+            }
+        }
+        int count = (lf < 0 ? end : lf + 1) - start;
+        if (lineLength + count > limit) {
+            if (state == State.HEAD) {
+                throw new ParseException(431, "Request Header Fields Too Large",
+                        "Request headers exceed " + MAX_HEADER_SIZE + " bytes");
+            }
+            throw new ParseException(400, "Bad Request", "Malformed chunked body");
+        }
+        buffer.get(line, lineLength, count);
+        lineLength += count;
+        return lf >= 0;
+    }
+
+    private void consumedBody(int n) throws IOException {
+        remaining -= n;
+        if (remaining == 0) {
+            finishBody();
+        }
+    }
+
+    private void finishBody() throws IOException {
+        body.finish();
+        state = State.DONE;
+    }
+
+    private boolean isBlankLine() {
+        return lineLength == 1 || (lineLength == 2 && line[0] == '\r');
+    }
+
+    // Length of the current line without its CRLF / LF terminator
+    private int contentEnd() {
+        int end = lineLength - 1;
+        if (end > 0 && line[end - 1] == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private void parseHeadLine() throws ParseException {
+        if (method == null) {
+            if (isBlankLine()) {
+                // Tolerate stray CRLF between pipelined requests
+                headSize = 0;
+            } else {
+                parseRequestLine();
+            }
+        } else if (isBlankLine()) {
+            startBody();
+        } else {
+            parseHeader();
+        }
+        lineLength = 0;
+    }
+
+    private void parseRequestLine() throws ParseException {
+        int end = contentEnd();
+        int firstSpace = indexOf(line, ' ', 0, end);
+        if (firstSpace <= 0) {
+            throw new ParseException(400, "Bad Request", "Malformed request line");
+        }
+        int secondSpace = indexOf(line, ' ', firstSpace + 1, end);
+        int pathEnd = secondSpace < 0 ? end : secondSpace;
+        method = new String(line, 0, firstSpace, StandardCharsets.US_ASCII);
+        path = new String(line, firstSpace + 1, pathEnd - firstSpace - 1, StandardCharsets.UTF_8);
+        version = secondSpace < 0 ? "HTTP/1.0"
+                : new String(line, secondSpace + 1, end - secondSpace - 1, StandardCharsets.US_ASCII);
+        headers = new HashMap<>();
+    }
+
+    private void parseHeader() throws ParseException {
+        int end = contentEnd();
+        int colon = indexOf(line, ':', 0, end);
+        if (colon <= 0) {
+            return;
+        }
+        int nameEnd = colon;
+        while (nameEnd > 0 && line[nameEnd - 1] == ' ') {
+            nameEnd--;
+        }
+        int known = knownHeader(nameEnd);
+        if (known < 0) {
+            return;
+        }
+
+        int valueStart = colon + 1;
+        while (valueStart < end && (line[valueStart] == ' ' || line[valueStart] == '\t')) {
+            valueStart++;
+        }
+        int valueEnd = end;
+        while (valueEnd > valueStart && (line[valueEnd - 1] == ' ' || line[valueEnd - 1] == '\t')) {
+            valueEnd--;
+        }
+
+        String name = KNOWN_HEADERS[known];
+        if ("content-length".equals(name)) {
+            contentLength = parseDecimal(valueStart, valueEnd);
+        } else if ("transfer-encoding".equals(name)) {
+            chunked = endsWithIgnoreCase(valueStart, valueEnd, CHUNKED);
+        }
+        headers.put(name, new String(line, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1));
+    }
+
+    private int knownHeader(int nameEnd) {
+        for (int i = 0; i < KNOWN_HEADER_BYTES.length; i++) {
+            byte[] candidate = KNOWN_HEADER_BYTES[i];
+            if (candidate.length == nameEnd && equalsIgnoreCase(0, candidate)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void startBody() throws ParseException {
+        if (chunked) {
+            body = new RequestBody(0, maxInMemoryLength, spoolDir);
+            state = State.CHUNK_SIZE;
+            return;
+        }
+        checkBodyLength(contentLength);
+        body = new RequestBody((int) Math.min(contentLength, maxInMemoryLength), maxInMemoryLength, spoolDir);
+        remaining = contentLength;
+        state = contentLength > 0 ? State.BODY : State.DONE;
+    }
+
+    private void parseChunkSize() throws IOException {
+        long size = 0;
+        int digits = 0;
+        for (int i = 0; i < lineLength; i++) {
+            int value = Character.digit(line[i], 16);
+            if (value < 0) {
+                break;
+            }
+            if (++digits > 15) {
+                throw new ParseException(400, "Bad Request", "Malformed chunk size");
+            }
+            size = (size << 4) | value;
+        }
+        if (digits == 0) {
+            throw new ParseException(400, "Bad Request", "Malformed chunk size");
+        }
+        lineLength = 0;
+
+        if (size == 0) {
+            state = State.TRAILER;
+            return;
+        }
+        checkBodyLength(body.length() + size);
+        remaining = size;
+        state = State.CHUNK_DATA;
+    }
+
+    private long parseDecimal(int start, int end) throws ParseException {
+        if (start == end || end - start > 18) {
+            throw new ParseException(400, "Bad Request", "Invalid Content-Length");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9') {
+                throw new ParseException(400, "Bad Request", "Invalid Content-Length");
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private void checkBodyLength(long length) throws ParseException {
+        if (length > maxBodyLength) {
+            throw new ParseException(413, "Payload Too Large",
+                    "Content too large. Maximum " + maxBodyLength + " bytes allowed.");
+        }
+    }
+
+    private boolean equalsIgnoreCase(int offset, byte[] lowerCase) {
+        for (int i = 0; i < lowerCase.length; i++) {
+            byte b = line[offset + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean endsWithIgnoreCase(int start, int end, byte[] lowerCase) {
+        return end - start >= lowerCase.length && equalsIgnoreCase(end - lowerCase.length, lowerCase);
+    }
+
+    private static int indexOf(byte[] bytes, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[][] toAscii(String[] names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,50 @@
+package com.paste.android;
+
+import java.nio.charset.StandardCharsets;
+
+public class HttpResponse {
+    private final int status;
+    private final String reason;
+    private final String body;
+    private final StringBuilder extraHeaders = new StringBuilder();
+    private String connectionHeader = "Connection: close\r\n";
+
+    public HttpResponse(int status, String reason, String body) {
+        this.status = status;
+        this.reason = reason;
+        this.body = body;
+    }
+
+    public HttpResponse addHeader(String name, String value) {
+        extraHeaders.append(name).append(": ").append(value).append("\r\n");
+        return this;
+    }
+
+    public HttpResponse setKeepAlive(int timeoutSeconds, int remainingRequests) {
+        connectionHeader = "Connection: keep-alive\r\n" +
+                "Keep-Alive: timeout=" + timeoutSeconds + ", max=" + remainingRequests + "\r\n";
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public byte[] encode() {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        // 204 carries no body, so it must not describe one either
+        String bodyHeaders = status == 204 ? "" :
+                "Content-Type: text/plain; charset=utf-8\r\n" +
+                "Content-Length: " + bodyBytes.length + "\r\n";
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n" +
+                bodyHeaders +
+                extraHeaders +
+                connectionHeader +
+                "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[headBytes.length + bodyBytes.length];
+        System.arraycopy(headBytes, 0, out, 0, headBytes.length);
+        System.arraycopy(bodyBytes, 0, out, headBytes.length, bodyBytes.length);
+        return out;
+    }
+}
@@ -5,62 +5,184 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import androidx.core.app.NotificationCompat;
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONException;
 
 public class HttpServerService extends Service {
     private static final String CHANNEL_ID = "HttpServerChannel";
     private static final int PORT = 8080;
-    private static final int MAX_CONTENT_LENGTH = 65536; // 64KB max
+    private static final int MAX_CONTENT_LENGTH = 65536; // 64KB kept in memory, larger bodies spool to disk
+    private static final int MAX_SPOOLED_FILES = 20;
+    private static final String SPOOL_DIR = "received";
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 30;
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final int REJECT_DRAIN_MILLIS = 100; // reading a rejected client's request before closing
+    private static final int IDLE_POLL_MILLIS = 250; // how often an idle keep-alive connection checks for queued clients
+    private static final int CLIPBOARD_WAIT_SECONDS = 25; // default long-poll hold
+    private static final int MAX_CLIPBOARD_WAIT_SECONDS = 60;
     private ServerSocket serverSocket;
     private Thread serverThread;
-    private boolean isRunning = false;
-    private OnTextReceivedListener listener;
+    private ThreadPoolExecutor workerPool;
+    // Runs NIO routes off the event loop; workerPool stays null in NIO mode
+    private ThreadPoolExecutor handlerPool;
+    private NioHttpServer nioServer;
+    private FramedPasteServer framedServer;
+    private DatagramPasteReceiver datagramReceiver;
+    private WifiManager.MulticastLock multicastLock;
+    private volatile boolean isRunning = false;
+    private int keepAliveTimeoutSeconds;
+    private int maxRequestsPerConnection;
+    private long maxStreamLength;
+    private File spoolDir;
+    private SettingsManager settings;
     private Handler mainHandler;
+    private UiDeliveryCoalescer uiDelivery;
+    private PasteHistory history;
+    private ClipboardFeed clipboardFeed;
+    private Runnable clipboardWakeup;
+    private final AtomicInteger blockingPolls = new AtomicInteger();
 
     public interface OnTextReceivedListener {
         void onTextReceived(String text);
+
+        // Bodies over MAX_CONTENT_LENGTH are streamed to a file; only a preview is held in memory
+        default void onLargeTextReceived(String preview, File file, long length) {
+            onTextReceived(preview);
+        }
+
+        // Snippets posted together to /paste/batch
+        default void onTextsReceived(List<String> texts) {
+            onTextReceived(String.join("\n", texts));
+        }
     }
 
     public void setListener(OnTextReceivedListener listener) {
-        synchronized (this) {
-            this.listener = listener;
-        }
+        uiDelivery.setListener(listener);
+    }
+
+    // Total pastes received, including ones coalesced away before reaching the UI
+    public long getReceivedCount() {
+        return uiDelivery.getReceivedCount();
     }
 
     @Override
     public void onCreate() {
         super.onCreate();
         mainHandler = new Handler(Looper.getMainLooper());
+        uiDelivery = new UiDeliveryCoalescer(mainHandler);
+        history = PasteHistory.getInstance(this);
+        clipboardFeed = ClipboardFeed.getInstance();
         createNotificationChannel();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         startForeground(1, createNotification("Server running on port " + PORT));
-        startServer();
+        if (!isRunning) {
+            startServer(new SettingsManager(this));
+        }
         return START_STICKY;
     }
 
-    private void startServer() {
+    private void startServer(SettingsManager settings) {
         isRunning = true;
+        this.settings = settings;
+        keepAliveTimeoutSeconds = settings.getServerKeepAliveTimeoutSeconds();
+        maxRequestsPerConnection = settings.getServerMaxRequestsPerConnection();
+        maxStreamLength = settings.getServerMaxStreamLength();
+        spoolDir = new File(getFilesDir(), SPOOL_DIR);
+        // Framed and UDP pastes take the same route as HTTP ones: history, then the UI
+        OnTextReceivedListener delivery = new OnTextReceivedListener() {
+            @Override
+            public void onTextReceived(String text) {
+                deliverText(text);
+            }
+
+            @Override
+            public void onTextsReceived(List<String> texts) {
+                deliverTexts(texts);
+            }
+        };
+        int framedPort = settings.getFramedPort();
+        if (framedPort > 0) {
+            framedServer = new FramedPasteServer(framedPort, settings.getServerAcceptBacklog(), delivery);
+            framedServer.start();
+        }
+        int udpPort = settings.getUdpPort();
+        if (udpPort > 0) {
+            String group = settings.getUdpMulticastGroup();
+            if (group != null) {
+                // Wi-Fi drivers filter multicast to save power unless someone holds this lock
+                WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+                multicastLock = wifiManager.createMulticastLock("paste-udp");
+                multicastLock.setReferenceCounted(false);
+                multicastLock.acquire();
+            }
+            datagramReceiver = new DatagramPasteReceiver(udpPort, group, delivery);
+            datagramReceiver.start();
+        }
+        if (SettingsManager.SERVER_MODE_NIO.equals(settings.getServerMode())) {
+            handlerPool = newWorkerPool(settings);
+            nioServer = new NioHttpServer(PORT, settings.getServerAcceptBacklog(), keepAliveTimeoutSeconds,
+                    maxRequestsPerConnection, this::newParser, new NioHttpServer.RequestHandler() {
+                        @Override
+                        public HttpResponse handle(HttpRequest request) {
+                            return handleRequest(request);
+                        }
+
+                        @Override
+                        public NioHttpServer.PendingResponse defer(HttpRequest request) {
+                            return deferClipboardPoll(request);
+                        }
+                    }, handlerPool);
+            // Waiting polls are parked on the event loop and answered when it wakes
+            clipboardWakeup = nioServer::wakeup;
+            clipboardFeed.addListener(clipboardWakeup);
+            nioServer.start();
+            return;
+        }
+
+        int acceptBacklog = settings.getServerAcceptBacklog();
+        workerPool = newWorkerPool(settings);
+
         serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(PORT);
+                serverSocket = new ServerSocket(PORT, acceptBacklog);
                 while (isRunning) {
                     try {
                         Socket client = serverSocket.accept();
-                        handleClient(client);
+                        try {
+                            workerPool.execute(() -> handleClient(client));
+                        } catch (RejectedExecutionException e) {
+                            rejectClient(client);
+                        }
                     } catch (IOException e) {
                         if (isRunning) {
                             e.printStackTrace();
@@ -74,95 +196,367 @@ public class HttpServerService extends Service {
         serverThread.start();
     }
 
-    private void handleClient(Socket client) {
-        new Thread(() -> {
-            try {
-                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-                PrintWriter out = new PrintWriter(client.getOutputStream(), true);
-
-                // Read the HTTP request
-                String line;
-                String method = "";
-                String path = "";
-                int contentLength = 0;
-                
-                // Parse request line
-                line = in.readLine();
-                if (line != null && !line.isEmpty()) {
-                    String[] parts = line.split(" ");
-                    if (parts.length >= 2) {
-                        method = parts[0];
-                        path = parts[1];
-                    }
+    // Bounded pool: bursts queue up to the configured limit, anything
+    // beyond that is answered with 503 instead of spawning more threads
+    private ThreadPoolExecutor newWorkerPool(SettingsManager settings) {
+        int workerThreads = settings.getServerWorkerThreads();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                workerThreads, workerThreads,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getServerQueueCapacity()),
+                new WorkerThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private void rejectClient(Socket client) {
+        try {
+            HttpResponse response = new HttpResponse(503, "Service Unavailable", "Server busy, retry later")
+                    .addHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            OutputStream out = client.getOutputStream();
+            out.write(response.encode());
+            out.flush();
+            // Closing with the request still unread makes the kernel send a reset, and the
+            // client then reports "connection reset" instead of the 503. Send our FIN and
+            // read what it already sent; this runs on the accept thread, so it is bounded.
+            client.shutdownOutput();
+            client.setSoTimeout(REJECT_DRAIN_MILLIS);
+            InputStream in = client.getInputStream();
+            byte[] discard = new byte[READ_BUFFER_SIZE];
+            long deadline = System.currentTimeMillis() + REJECT_DRAIN_MILLIS;
+            int drained = 0;
+            while (drained < MAX_CONTENT_LENGTH && System.currentTimeMillis() < deadline) {
+                int n = in.read(discard);
+                if (n < 0) {
+                    break;
                 }
+                drained += n;
+            }
+        } catch (SocketTimeoutException e) {
+            // The client kept its side open; close anyway
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    private void handleClient(Socket client) {
+        HttpRequestParser parser = newParser();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        ByteBuffer readBuffer = ByteBuffer.wrap(buffer);
+        readBuffer.limit(0);
 
-                // Read headers
-                while ((line = in.readLine()) != null && !line.isEmpty()) {
-                    if (line.toLowerCase().startsWith("content-length:")) {
-                        contentLength = Integer.parseInt(line.substring(15).trim());
+        try {
+            // The idle timeout also bounds how long a slow sender can hold a worker
+            client.setSoTimeout(keepAliveTimeoutSeconds * 1000);
+            InputStream in = client.getInputStream();
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            int served = 0;
+            boolean keepAlive = true;
+
+            while (keepAlive && isRunning) {
+                HttpResponse response;
+                try {
+                    // Bytes left over from the previous read may already hold
+                    // the next pipelined request
+                    while (!parser.parse(readBuffer)) {
+                        // Push out queued responses before blocking for more input
+                        out.flush();
+                        if (parser.isReadingBody()) {
+                            // Read straight into the body instead of through readBuffer
+                            if (parser.readBody(in) < 0) {
+                                return;
+                            }
+                            continue;
+                        }
+                        readBuffer.compact();
+                        int read = served > 0 && parser.isIdle()
+                                ? readIdle(client, in, buffer, readBuffer.position(), readBuffer.remaining())
+                                : in.read(buffer, readBuffer.position(), readBuffer.remaining());
+                        if (read < 0) {
+                            return;
+                        }
+                        readBuffer.position(readBuffer.position() + read);
+                        readBuffer.flip();
+                    }
+                    HttpRequest request = parser.takeRequest();
+                    served++;
+                    response = handleRequest(request);
+                    keepAlive = request.isKeepAlive() && served < maxRequestsPerConnection;
+                    // Hand the worker to a queued connection unless a pipelined request is already here
+                    if (keepAlive && !readBuffer.hasRemaining() && !workerPool.getQueue().isEmpty()) {
+                        keepAlive = false;
                     }
+                } catch (HttpRequestParser.ParseException e) {
+                    response = e.toResponse();
+                    keepAlive = false;
                 }
 
-                // Validate content length
-                if (contentLength > MAX_CONTENT_LENGTH) {
-                    String response = "Content too large. Maximum " + MAX_CONTENT_LENGTH + " bytes allowed.";
-                    out.println("HTTP/1.1 413 Payload Too Large");
-                    out.println("Content-Type: text/plain");
-                    out.println("Content-Length: " + response.length());
-                    out.println("Connection: close");
-                    out.println();
-                    out.println(response);
+                if (keepAlive) {
+                    response.setKeepAlive(keepAliveTimeoutSeconds, maxRequestsPerConnection - served);
+                }
+                // Buffered so responses to pipelined requests share TCP segments
+                out.write(response.encode());
+                if (!keepAlive) {
                     out.flush();
-                    client.close();
-                    return;
                 }
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle keep-alive connection, just close it
+        } catch (IOException e) {
+            if (isRunning) {
+                e.printStackTrace();
+            }
+        } finally {
+            parser.reset();
+            closeQuietly(client);
+        }
+    }
 
-                // Handle POST request to /paste
-                if ("POST".equals(method) && path.startsWith("/paste")) {
-                    // Read the body
-                    StringBuilder body = new StringBuilder();
-                    if (contentLength > 0) {
-                        char[] buffer = new char[contentLength];
-                        int read = in.read(buffer, 0, contentLength);
-                        if (read > 0) {
-                            body.append(buffer, 0, read);
-                        }
+    // Waits for the next request in short slices so an idle keep-alive
+    // connection gives up its worker as soon as another connection is queued
+    private int readIdle(Socket client, InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        long deadline = System.currentTimeMillis() + keepAliveTimeoutSeconds * 1000L;
+        client.setSoTimeout(IDLE_POLL_MILLIS);
+        try {
+            while (true) {
+                try {
+                    return in.read(buffer, offset, length);
+                } catch (SocketTimeoutException e) {
+                    if (!isRunning || !workerPool.getQueue().isEmpty()
+                            || System.currentTimeMillis() >= deadline) {
+                        throw e;
                     }
+                }
+            }
+        } finally {
+            if (!client.isClosed()) {
+                client.setSoTimeout(keepAliveTimeoutSeconds * 1000);
+            }
+        }
+    }
 
-                    String receivedText = body.toString();
+    private HttpRequestParser newParser() {
+        return new HttpRequestParser(MAX_CONTENT_LENGTH, maxStreamLength, spoolDir);
+    }
 
-                    // Notify listener on main thread
-                    synchronized (this) {
-                        if (listener != null) {
-                            mainHandler.post(() -> listener.onTextReceived(receivedText));
-                        }
-                    }
+    private static void closeQuietly(Socket client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Request routing shared by the blocking and NIO engines
+    private HttpResponse handleRequest(HttpRequest request) {
+        String encoding = request.getHeader("content-encoding");
+        if (!ContentDecoder.isIdentity(encoding)) {
+            try {
+                request = request.withBody(ContentDecoder.decode(request.getBody(), encoding,
+                        MAX_CONTENT_LENGTH, maxStreamLength, spoolDir));
+            } catch (HttpRequestParser.ParseException e) {
+                return e.toResponse();
+            } catch (IOException e) {
+                return new HttpResponse(400, "Bad Request", "Corrupt " + encoding + " body: " + e.getMessage());
+            }
+        }
+        if ("POST".equals(request.getMethod()) && request.getPath().startsWith("/paste/batch")) {
+            return handleBatch(request);
+        }
+        if ("POST".equals(request.getMethod()) && request.getPath().startsWith("/paste")) {
+            RequestBody body = request.getBody();
+            if (body.isSpooled()) {
+                deliverLargeText(body.getPreview(), body.getFile(), body.length());
+            } else {
+                deliverText(body.getText());
+            }
+            return new HttpResponse(200, "OK", "Text received successfully");
+        }
+        // No other route keeps the body, so a spooled one must not outlive the request
+        request.getBody().discard();
+        if (isClipboardPoll(request)) {
+            return handleClipboardPoll(request);
+        }
+        return new HttpResponse(200, "OK",
+                "Send POST request to /paste with text in body, or to /paste/batch with one snippet per line; " +
+                "GET /clipboard?since=<seq> with X-Paste-Token waits for text shared from the phone");
+    }
+
+    private static boolean isClipboardPoll(HttpRequest request) {
+        return "GET".equals(request.getMethod()) && request.getPath().startsWith("/clipboard");
+    }
 
-                    // Send HTTP response
-                    String response = "Text received successfully";
-                    out.println("HTTP/1.1 200 OK");
-                    out.println("Content-Type: text/plain");
-                    out.println("Content-Length: " + response.length());
-                    out.println("Connection: close");
-                    out.println();
-                    out.println(response);
-                } else {
-                    // Send usage info for other requests
-                    String response = "Send POST request to /paste with text in body";
-                    out.println("HTTP/1.1 200 OK");
-                    out.println("Content-Type: text/plain");
-                    out.println("Content-Length: " + response.length());
-                    out.println("Connection: close");
-                    out.println();
-                    out.println(response);
+    // Long-poll: answers at once if there is a clip the client has not seen,
+    // otherwise holds the request until one is shared or the wait runs out
+    private HttpResponse handleClipboardPoll(HttpRequest request) {
+        HttpResponse denied = checkClipboardAccess(request);
+        if (denied != null) {
+            return denied;
+        }
+        long since = queryParam(request.getPath(), "since", 0);
+        long waitMillis = clipboardWaitSeconds(request) * 1000L;
+        ClipboardFeed.Clip clip = clipboardFeed.since(since);
+        // The NIO engine parks waiting polls in deferClipboardPoll instead of blocking here
+        if (clip == null && waitMillis > 0 && workerPool != null) {
+            try {
+                // Every waiting poll holds a worker; keep one free for pastes
+                if (blockingPolls.incrementAndGet() >= workerPool.getMaximumPoolSize()) {
+                    return new HttpResponse(503, "Service Unavailable", "Too many clients waiting, retry later")
+                            .addHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
                 }
+                clip = clipboardFeed.await(since, waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new HttpResponse(503, "Service Unavailable", "Server stopping");
+            } finally {
+                blockingPolls.decrementAndGet();
+            }
+        }
+        return clipResponse(clip, since);
+    }
 
-                out.flush();
-                client.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    private NioHttpServer.PendingResponse deferClipboardPoll(HttpRequest request) {
+        if (!isClipboardPoll(request) || checkClipboardAccess(request) != null) {
+            // Refusals are answered straight away by handleRequest
+            return null;
+        }
+        long since = queryParam(request.getPath(), "since", 0);
+        long waitMillis = clipboardWaitSeconds(request) * 1000L;
+        if (waitMillis == 0 || clipboardFeed.since(since) != null) {
+            // handleRequest can answer straight away
+            return null;
+        }
+        // handleRequest is skipped for a parked poll, so drop any body here
+        request.getBody().discard();
+        return new ClipboardPoll(since, System.currentTimeMillis() + waitMillis);
+    }
+
+    // Shared text may be a password, so the endpoint is off until the user turns
+    // it on and then needs the token shown in the app. Null when access is allowed.
+    private HttpResponse checkClipboardAccess(HttpRequest request) {
+        if (!settings.isClipboardSharing()) {
+            return new HttpResponse(404, "Not Found", "Clipboard sharing is turned off on the phone");
+        }
+        String token = request.getHeader("x-paste-token");
+        byte[] expected = settings.getClipboardToken().getBytes(StandardCharsets.UTF_8);
+        if (token == null || !MessageDigest.isEqual(token.trim().getBytes(StandardCharsets.UTF_8), expected)) {
+            return new HttpResponse(403, "Forbidden", "Missing or wrong X-Paste-Token");
+        }
+        return null;
+    }
+
+    // 204 once the wait runs out; the client polls again with the same seq
+    private static HttpResponse clipResponse(ClipboardFeed.Clip clip, long since) {
+        HttpResponse response = clip == null
+                ? new HttpResponse(204, "No Content", "").addHeader("X-Clip-Seq", String.valueOf(since))
+                : new HttpResponse(200, "OK", clip.getText()).addHeader("X-Clip-Seq", String.valueOf(clip.getSeq()));
+        return response.addHeader("Cache-Control", "no-store");
+    }
+
+    private static int clipboardWaitSeconds(HttpRequest request) {
+        long wait = queryParam(request.getPath(), "wait", CLIPBOARD_WAIT_SECONDS);
+        return (int) Math.max(0, Math.min(wait, MAX_CLIPBOARD_WAIT_SECONDS));
+    }
+
+    private static long queryParam(String path, String name, long fallback) {
+        int query = path.indexOf('?');
+        if (query < 0) {
+            return fallback;
+        }
+        for (String pair : path.substring(query + 1).split("&")) {
+            if (pair.startsWith(name + "=")) {
+                try {
+                    return Long.parseLong(pair.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return fallback;
+                }
             }
-        }).start();
+        }
+        return fallback;
+    }
+
+    // A poll parked on the NIO event loop, which asks again after every wakeup
+    private class ClipboardPoll implements NioHttpServer.PendingResponse {
+        private final long since;
+        private final long deadline;
+        private boolean finished;
+
+        ClipboardPoll(long since, long deadline) {
+            this.since = since;
+            this.deadline = deadline;
+            clipboardFeed.enterWait();
+        }
+
+        @Override
+        public HttpResponse poll(long now) {
+            ClipboardFeed.Clip clip = clipboardFeed.since(since);
+            if (clip == null && now < deadline) {
+                return null;
+            }
+            finish();
+            return clipResponse(clip, since);
+        }
+
+        @Override
+        public void cancel() {
+            finish();
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                clipboardFeed.exitWait();
+            }
+        }
+    }
+
+    private HttpResponse handleBatch(HttpRequest request) {
+        List<String> snippets;
+        try {
+            boolean ndjson = PasteBatchReader.isNdjson(request.getHeader("content-type"));
+            snippets = PasteBatchReader.read(request.getBody(), ndjson);
+        } catch (IOException | JSONException e) {
+            return new HttpResponse(400, "Bad Request", "Invalid batch: " + e.getMessage());
+        } finally {
+            request.getBody().discard();
+        }
+        if (!snippets.isEmpty()) {
+            deliverTexts(snippets);
+        }
+        return new HttpResponse(200, "OK", "Received " + snippets.size() + " snippets");
+    }
+
+    private void deliverTexts(List<String> texts) {
+        history.onTextsReceived(texts);
+        // The whole batch reaches the UI as a single main-thread update
+        uiDelivery.submit(listener -> listener.onTextsReceived(texts));
+    }
+
+    private void deliverText(String text) {
+        // History records every paste, including ones the UI coalesces away
+        history.onTextReceived(text);
+        // Notify listener on main thread, at most once per frame
+        uiDelivery.submit(listener -> listener.onTextReceived(text));
+    }
+
+    private void deliverLargeText(String preview, File file, long length) {
+        pruneSpoolDir();
+        history.onLargeTextReceived(preview, file, length);
+        uiDelivery.submit(listener -> listener.onLargeTextReceived(preview, file, length));
+    }
+
+    // Keep only the most recent spooled uploads
+    private void pruneSpoolDir() {
+        File[] files = spoolDir.listFiles();
+        if (files == null || files.length <= MAX_SPOOLED_FILES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_SPOOLED_FILES; i < files.length; i++) {
+            files[i].delete();
+        }
     }
 
     @Override
@@ -179,9 +573,28 @@ public class HttpServerService extends Service {
         if (serverThread != null) {
             serverThread.interrupt();
         }
-        synchronized (this) {
-            listener = null;
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+        if (handlerPool != null) {
+            handlerPool.shutdownNow();
+        }
+        if (framedServer != null) {
+            framedServer.stop();
         }
+        if (datagramReceiver != null) {
+            datagramReceiver.stop();
+        }
+        if (multicastLock != null && multicastLock.isHeld()) {
+            multicastLock.release();
+        }
+        if (clipboardWakeup != null) {
+            clipboardFeed.removeListener(clipboardWakeup);
+        }
+        uiDelivery.setListener(null);
     }
 
     @Override
@@ -195,6 +608,15 @@ public class HttpServerService extends Service {
         }
     }
 
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "paste-worker-" + count.incrementAndGet());
+        }
+    }
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
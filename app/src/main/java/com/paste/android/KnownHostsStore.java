@@ -0,0 +1,282 @@
+package com.paste.android;
+
+import android.content.Context;
+import com.jcraft.jsch.HostKey;
+import com.jcraft.jsch.HostKeyRepository;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.UserInfo;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// What we learned about each SSH server on first connect: its host keys, in
+// known_hosts format, and the algorithms it negotiated (kex, host key, cipher,
+// MAC). Host keys are trusted on first use and checked on every later
+// connect; the algorithms are proposed first next time so the handshake
+// settles on them straight away. Hosts are identified the way ssh does:
+// "host" on port 22, "[host]:port" otherwise.
+public class KnownHostsStore implements HostKeyRepository {
+    private static final String KNOWN_HOSTS_FILE = "known_hosts";
+    private static final String ALGORITHMS_FILE = "host_algorithms";
+    private static final String MAC_IMPLICIT = "<implicit>"; // AEAD ciphers carry their own MAC
+
+    private static KnownHostsStore instance;
+
+    public static synchronized KnownHostsStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new KnownHostsStore(context.getApplicationContext().getFilesDir());
+        }
+        return instance;
+    }
+
+    private final File knownHostsFile;
+    private final File algorithmsFile;
+    private final Map<String, List<HostKey>> hostKeys = new LinkedHashMap<>();
+    private final Map<String, Map<String, String>> algorithms = new LinkedHashMap<>();
+
+    private KnownHostsStore(File filesDir) {
+        knownHostsFile = new File(filesDir, KNOWN_HOSTS_FILE);
+        algorithmsFile = new File(filesDir, ALGORITHMS_FILE);
+        loadHostKeys();
+        loadAlgorithms();
+    }
+
+    public static String hostIdOf(String host, int port) {
+        return port == 22 ? host : "[" + host + "]:" + port;
+    }
+
+    public synchronized boolean isKnown(String hostId) {
+        return hostKeys.containsKey(hostId);
+    }
+
+    // Forgets the host key and algorithms, e.g. after the server was reinstalled
+    public synchronized void forget(String hostId) {
+        if (hostKeys.remove(hostId) != null) {
+            saveHostKeys();
+        }
+        if (algorithms.remove(hostId) != null) {
+            saveAlgorithms();
+        }
+    }
+
+    // JSch config names ("kex", "cipher.c2s", ...) mapped to the algorithm last negotiated
+    public synchronized Map<String, String> getAlgorithms(String hostId) {
+        Map<String, String> learned = algorithms.get(hostId);
+        return learned == null ? Collections.<String, String>emptyMap() : new HashMap<>(learned);
+    }
+
+    public synchronized void learnAlgorithms(String hostId, Map<String, String> negotiated) {
+        Map<String, String> learned = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : negotiated.entrySet()) {
+            if (!entry.getValue().equals(MAC_IMPLICIT)) {
+                learned.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!learned.isEmpty() && !learned.equals(algorithms.get(hostId))) {
+            algorithms.put(hostId, learned);
+            saveAlgorithms();
+        }
+    }
+
+    @Override
+    public synchronized int check(String host, byte[] key) {
+        List<HostKey> known = hostKeys.get(host);
+        if (known == null) {
+            return NOT_INCLUDED;
+        }
+        HostKey offered;
+        try {
+            offered = new HostKey(host, key);
+        } catch (JSchException e) {
+            e.printStackTrace();
+            return NOT_INCLUDED;
+        }
+        int result = NOT_INCLUDED;
+        for (HostKey hostKey : known) {
+            if (hostKey.getType().equals(offered.getType())) {
+                if (hostKey.getKey().equals(offered.getKey())) {
+                    return OK;
+                }
+                result = CHANGED;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void add(HostKey hostKey, UserInfo userInfo) {
+        List<HostKey> known = hostKeys.get(hostKey.getHost());
+        if (known == null) {
+            known = new ArrayList<>();
+            hostKeys.put(hostKey.getHost(), known);
+        }
+        known.add(hostKey);
+        saveHostKeys();
+    }
+
+    @Override
+    public synchronized void remove(String host, String type) {
+        remove(host, type, null);
+    }
+
+    @Override
+    public synchronized void remove(String host, String type, byte[] key) {
+        List<HostKey> known = hostKeys.get(host);
+        if (known == null) {
+            return;
+        }
+        String encoded = key == null ? null : Base64.getEncoder().encodeToString(key);
+        boolean removed = false;
+        for (int i = known.size() - 1; i >= 0; i--) {
+            HostKey hostKey = known.get(i);
+            if ((type == null || hostKey.getType().equals(type))
+                    && (encoded == null || hostKey.getKey().equals(encoded))) {
+                known.remove(i);
+                removed = true;
+            }
+        }
+        if (known.isEmpty()) {
+            hostKeys.remove(host);
+        }
+        if (removed) {
+            saveHostKeys();
+        }
+    }
+
+    @Override
+    public String getKnownHostsRepositoryID() {
+        return knownHostsFile.getPath();
+    }
+
+    @Override
+    public synchronized HostKey[] getHostKey() {
+        List<HostKey> all = new ArrayList<>();
+        for (List<HostKey> known : hostKeys.values()) {
+            all.addAll(known);
+        }
+        return all.toArray(new HostKey[0]);
+    }
+
+    @Override
+    public synchronized HostKey[] getHostKey(String host, String type) {
+        List<HostKey> matching = new ArrayList<>();
+        List<HostKey> known = hostKeys.get(host);
+        if (known != null) {
+            for (HostKey hostKey : known) {
+                if (type == null || hostKey.getType().equals(type)) {
+                    matching.add(hostKey);
+                }
+            }
+        }
+        return matching.toArray(new HostKey[0]);
+    }
+
+    // "host type base64key", as in ~/.ssh/known_hosts
+    private void loadHostKeys() {
+        for (String[] fields : readLines(knownHostsFile)) {
+            if (fields.length < 3) {
+                continue;
+            }
+            try {
+                HostKey hostKey = new HostKey(fields[0], Base64.getDecoder().decode(fields[2]));
+                List<HostKey> known = hostKeys.get(fields[0]);
+                if (known == null) {
+                    known = new ArrayList<>();
+                    hostKeys.put(fields[0], known);
+                }
+                known.add(hostKey);
+            } catch (JSchException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void saveHostKeys() {
+        List<String> lines = new ArrayList<>();
+        for (List<HostKey> known : hostKeys.values()) {
+            for (HostKey hostKey : known) {
+                lines.add(hostKey.getHost() + " " + hostKey.getType() + " " + hostKey.getKey());
+            }
+        }
+        writeLines(knownHostsFile, lines);
+    }
+
+    // "host name=algorithm name=algorithm ..."
+    private void loadAlgorithms() {
+        for (String[] fields : readLines(algorithmsFile)) {
+            Map<String, String> learned = new LinkedHashMap<>();
+            for (int i = 1; i < fields.length; i++) {
+                int split = fields[i].indexOf('=');
+                if (split > 0) {
+                    learned.put(fields[i].substring(0, split), fields[i].substring(split + 1));
+                }
+            }
+            if (!learned.isEmpty()) {
+                algorithms.put(fields[0], learned);
+            }
+        }
+    }
+
+    private void saveAlgorithms() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> host : algorithms.entrySet()) {
+            StringBuilder line = new StringBuilder(host.getKey());
+            for (Map.Entry<String, String> entry : host.getValue().entrySet()) {
+                line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            lines.add(line.toString());
+        }
+        writeLines(algorithmsFile, lines);
+    }
+
+    private static List<String[]> readLines(File file) {
+        List<String[]> lines = new ArrayList<>();
+        if (!file.exists()) {
+            return lines;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line.split("\\s+"));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return lines;
+    }
+
+    // Written to a temp file and renamed so a crash never leaves half a file
+    private static void writeLines(File file, List<String> lines) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+}
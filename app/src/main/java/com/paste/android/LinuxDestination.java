@@ -1,11 +1,13 @@
 package com.paste.android;
 
 public class LinuxDestination {
+    private long id; // row id in DestinationStore, 0 until saved
     private String name;
     private String user;
     private String host;
     private int port;
     private String directory;
+    private String keyName; // SshKeyStore name, null for the default key
 
     public LinuxDestination(String name, String user, String host, int port, String directory) {
         this.name = name;
@@ -15,6 +17,14 @@ public class LinuxDestination {
         this.directory = directory;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -55,6 +65,14 @@ public class LinuxDestination {
         this.directory = directory;
     }
 
+    public String getKeyName() {
+        return keyName;
+    }
+
+    public void setKeyName(String keyName) {
+        this.keyName = keyName;
+    }
+
     @Override
     public String toString() {
         return name + " (" + user + "@" + host + ":" + port + ")";
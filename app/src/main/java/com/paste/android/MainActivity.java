@@ -13,20 +13,27 @@ import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.text.InputType;
 import android.widget.Button;
-import android.widget.RadioButton;
-import android.widget.RadioGroup;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
-import java.io.BufferedReader;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
     private TextView statusText;
@@ -34,11 +41,19 @@ public class MainActivity extends AppCompatActivity {
     private TextView ipText;
     private Button startButton;
     private Button stopButton;
+    private Button serverSettingsButton;
     private Button copyButton;
+    private Button historyButton;
     private Button setupSSHKeyButton;
     private Button manageDestinationsButton;
+    private Button importSshConfigButton;
     private Button sendClipboardButton;
-    private RadioGroup destinationRadioGroup;
+    private LinearLayout destinationList;
+    private Switch syncModeSwitch;
+    private Switch compressionSwitch;
+    private Switch autoSyncSwitch;
+    private Switch clipboardSharingSwitch;
+    private ClipboardWatcher clipboardWatcher;
     
     private boolean serverRunning = false;
     private HttpServerService service;
@@ -47,6 +62,7 @@ public class MainActivity extends AppCompatActivity {
     
     private SettingsManager settingsManager;
     private ActivityResultLauncher<String> sshKeyPickerLauncher;
+    private ActivityResultLauncher<String> sshConfigPickerLauncher;
 
     private ServiceConnection connection = new ServiceConnection() {
         @Override
@@ -70,24 +86,72 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         settingsManager = new SettingsManager(this);
+        TransferQueue.getInstance().setOutbox(Outbox.getInstance(this));
+        SshSessionPool.getInstance().setTransferTuning(
+            settingsManager.getSftpBulkRequests(), settingsManager.getSftpWriteBufferSize());
+        TransferQueue.getInstance().setSyncMode(settingsManager.isSyncMode());
+        SshSessionPool.getInstance().setKnownHosts(KnownHostsStore.getInstance(this));
+        SshSessionPool.getInstance().setCompression(settingsManager.isSshCompression());
 
         statusText = findViewById(R.id.statusText);
         receivedText = findViewById(R.id.receivedText);
         ipText = findViewById(R.id.ipText);
         startButton = findViewById(R.id.startButton);
         stopButton = findViewById(R.id.stopButton);
+        serverSettingsButton = findViewById(R.id.serverSettingsButton);
         copyButton = findViewById(R.id.copyButton);
+        historyButton = findViewById(R.id.historyButton);
         setupSSHKeyButton = findViewById(R.id.setupSSHKeyButton);
         manageDestinationsButton = findViewById(R.id.manageDestinationsButton);
+        importSshConfigButton = findViewById(R.id.importSshConfigButton);
         sendClipboardButton = findViewById(R.id.sendClipboardButton);
-        destinationRadioGroup = findViewById(R.id.destinationRadioGroup);
+        destinationList = findViewById(R.id.destinationList);
+        syncModeSwitch = findViewById(R.id.syncModeSwitch);
+        compressionSwitch = findViewById(R.id.compressionSwitch);
+        autoSyncSwitch = findViewById(R.id.autoSyncSwitch);
+        clipboardSharingSwitch = findViewById(R.id.clipboardSharingSwitch);
+        clipboardWatcher = new ClipboardWatcher(this, settingsManager, text -> shareText(text, true));
 
         startButton.setOnClickListener(v -> startServer());
         stopButton.setOnClickListener(v -> stopServer());
+        serverSettingsButton.setOnClickListener(v -> ServerSettingsDialog.show(this, settingsManager));
         copyButton.setOnClickListener(v -> copyToClipboard());
+        historyButton.setOnClickListener(v -> PasteHistoryDialog.show(this, clipboardWatcher::markSent));
         setupSSHKeyButton.setOnClickListener(v -> setupSSHKey());
         manageDestinationsButton.setOnClickListener(v -> manageDestinations());
+        importSshConfigButton.setOnClickListener(v -> sshConfigPickerLauncher.launch("*/*"));
         sendClipboardButton.setOnClickListener(v -> sendClipboardToLinux());
+        sendClipboardButton.setOnLongClickListener(v -> {
+            // Long press drops transfers that are still waiting to run
+            int cancelled = TransferQueue.getInstance().cancelAll();
+            Toast.makeText(this, "Cancelled " + cancelled + " queued transfer(s)", Toast.LENGTH_SHORT).show();
+            return true;
+        });
+        syncModeSwitch.setChecked(settingsManager.isSyncMode());
+        syncModeSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            settingsManager.setSyncMode(isChecked);
+            TransferQueue.getInstance().setSyncMode(isChecked);
+        });
+        compressionSwitch.setChecked(settingsManager.isSshCompression());
+        compressionSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            settingsManager.setSshCompression(isChecked);
+            SshSessionPool.getInstance().setCompression(isChecked);
+        });
+        autoSyncSwitch.setChecked(settingsManager.isAutoSync());
+        autoSyncSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            settingsManager.setAutoSync(isChecked);
+            updateAutoSync();
+        });
+        clipboardSharingSwitch.setChecked(settingsManager.isClipboardSharing());
+        clipboardSharingSwitch.setOnCheckedChangeListener((button, isChecked) -> {
+            settingsManager.setClipboardSharing(isChecked);
+            if (!isChecked) {
+                // Turning it back on later must not hand out what was shared before
+                ClipboardFeed.getInstance().clear();
+            }
+            showIPAddress();
+            updateSendButtonState();
+        });
 
         // Setup SSH key picker
         sshKeyPickerLauncher = registerForActivityResult(
@@ -99,10 +163,22 @@ public class MainActivity extends AppCompatActivity {
             }
         );
 
+        // Setup SSH config picker
+        sshConfigPickerLauncher = registerForActivityResult(
+            new ActivityResultContracts.GetContent(),
+            uri -> {
+                if (uri != null) {
+                    importSshConfig(uri);
+                }
+            }
+        );
+
         updateUI();
         showIPAddress();
-        loadDestinations();
-        updateSendButtonState();
+        settingsManager.loadDestinations(() -> runOnUiThread(() -> {
+            loadDestinations();
+            updateSendButtonState();
+        }));
     }
 
     private void startServer() {
@@ -138,6 +214,7 @@ public class MainActivity extends AppCompatActivity {
             startButton.setEnabled(true);
             stopButton.setEnabled(false);
         }
+        updateSendButtonState();
     }
 
     private void showIPAddress() {
@@ -152,21 +229,52 @@ public class MainActivity extends AppCompatActivity {
             (ipInt >> 16 & 0xff),
             (ipInt >> 24 & 0xff));
         
-        ipText.setText("Device IP: " + ipAddress + "\nPort: 8080\n\n" +
+        String instructions = "Device IP: " + ipAddress + "\nPort: 8080\n\n" +
                 "To send text from Linux terminal:\n" +
-                "curl -X POST http://" + ipAddress + ":8080/paste -d \"Your text here\"");
+                "curl -X POST http://" + ipAddress + ":8080/paste -d \"Your text here\"";
+        if (settingsManager.isClipboardSharing()) {
+            instructions += "\n\nTo receive shared text on Linux:\n" +
+                    "./paste-to-android.sh -i " + ipAddress + " -k " + settingsManager.getClipboardToken() + " -w";
+        }
+        ipText.setText(instructions);
     }
 
     private void registerListener() {
         if (service != null) {
-            service.setListener(text -> runOnUiThread(() -> {
-                lastReceivedText = text;
-                receivedText.setText("Received: " + text);
-                copyButton.setEnabled(true);
-            }));
+            // Callbacks already arrive on the main thread, coalesced to one per frame
+            service.setListener(new HttpServerService.OnTextReceivedListener() {
+                @Override
+                public void onTextReceived(String text) {
+                    showReceived(text, "Received" + receivedCountLabel() + ": " + text);
+                }
+
+                @Override
+                public void onTextsReceived(List<String> texts) {
+                    String joined = String.join("\n", texts);
+                    showReceived(joined, "Received " + texts.size() + " snippets" +
+                            receivedCountLabel() + ":\n" + joined);
+                }
+
+                @Override
+                public void onLargeTextReceived(String preview, File file, long length) {
+                    // Only the preview is loaded; the full text stays in the spool file
+                    showReceived(preview, "Received " + length + " bytes" + receivedCountLabel() +
+                            ", saved to " + file.getAbsolutePath() + "\n\nPreview:\n" + preview);
+                }
+            });
         }
     }
 
+    private void showReceived(String text, String display) {
+        lastReceivedText = text;
+        receivedText.setText(display);
+        copyButton.setEnabled(true);
+    }
+
+    private String receivedCountLabel() {
+        return service != null ? " (#" + service.getReceivedCount() + ")" : "";
+    }
+
     private void copyToClipboard() {
         if (lastReceivedText.isEmpty()) {
             Toast.makeText(this, "No text to copy", Toast.LENGTH_SHORT).show();
@@ -175,6 +283,7 @@ public class MainActivity extends AppCompatActivity {
 
         ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
         ClipData clip = ClipData.newPlainText("Received Text", lastReceivedText);
+        clipboardWatcher.markSent(lastReceivedText);
         clipboard.setPrimaryClip(clip);
         Toast.makeText(this, "Text copied to clipboard", Toast.LENGTH_SHORT).show();
     }
@@ -185,6 +294,22 @@ public class MainActivity extends AppCompatActivity {
         if (bound) {
             registerListener();
         }
+        updateAutoSync();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        clipboardWatcher.stop();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        // The clipboard is only readable with focus; pick up what was copied elsewhere
+        if (hasFocus) {
+            clipboardWatcher.check();
+        }
     }
 
     @Override
@@ -200,9 +325,10 @@ public class MainActivity extends AppCompatActivity {
         new AlertDialog.Builder(this)
                 .setTitle("Setup SSH Key")
                 .setMessage("Select your SSH private key file.\n\n" +
-                        "IMPORTANT: The key must be in PEM format (not OpenSSH format).\n\n" +
-                        "Generate a compatible key on Linux:\n" +
-                        "ssh-keygen -t rsa -m PEM -f ~/paste_key\n\n" +
+                        "Ed25519, ECDSA and RSA keys are supported, in OpenSSH or PEM format, " +
+                        "with or without a passphrase.\n\n" +
+                        "Generate a key on Linux:\n" +
+                        "ssh-keygen -t ed25519 -f ~/paste_key\n\n" +
                         "Then add public key to Linux:\n" +
                         "cat ~/paste_key.pub >> ~/.ssh/authorized_keys\n\n" +
                         "Transfer the PRIVATE key (paste_key) to Android.")
@@ -213,72 +339,143 @@ public class MainActivity extends AppCompatActivity {
                 .show();
     }
 
+    private void importSshConfig(Uri uri) {
+        Toast.makeText(this, "Importing SSH config...", Toast.LENGTH_SHORT).show();
+        // Configs can list thousands of hosts; parse off the UI thread, then
+        // insert on the destination thread with the other writes
+        new Thread(() -> {
+            SshConfigParser.Result result;
+            try (InputStream inputStream = getContentResolver().openInputStream(uri)) {
+                result = SshConfigParser.parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), "~");
+            } catch (Exception e) {
+                e.printStackTrace();
+                showToastOnUiThread("Failed to import SSH config: " + e.getMessage());
+                return;
+            }
+            settingsManager.importDestinations(result.destinations, added -> {
+                String message = "Imported " + added + " destination(s)";
+                int ignored = result.destinations.size() - added;
+                if (ignored > 0) {
+                    message += ", " + ignored + " already present";
+                }
+                if (result.skipped > 0) {
+                    message += ", " + result.skipped + " skipped without User";
+                }
+                String toast = message;
+                runOnUiThread(() -> {
+                    loadDestinations();
+                    updateSendButtonState();
+                    Toast.makeText(MainActivity.this, toast, Toast.LENGTH_LONG).show();
+                });
+            });
+        }, "ssh-config-import").start();
+    }
+
+    // Asks which name to store the key under; "default" replaces the key
+    // used by destinations that do not name one
     private void importSSHKey(Uri uri) {
+        EditText nameInput = new EditText(this);
+        nameInput.setText(SshKeyStore.DEFAULT_KEY);
+        new AlertDialog.Builder(this)
+                .setTitle("Key Name")
+                .setView(nameInput)
+                .setPositiveButton("Import", (dialog, which) -> {
+                    String name = nameInput.getText().toString().trim();
+                    if (!SshKeyStore.isValidName(name)) {
+                        Toast.makeText(this, "Key names may only use letters, digits, '.', '_' and '-'", Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    // Reading, parsing and writing the key stay off the main thread
+                    new Thread(() -> importSSHKey(uri, name)).start();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void importSSHKey(Uri uri, String name) {
         try {
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            StringBuilder keyContent = new StringBuilder();
-            String line;
-            String firstLine = null;
-            while ((line = reader.readLine()) != null) {
-                if (firstLine == null) {
-                    firstLine = line;
+            byte[] keyContent;
+            try (InputStream inputStream = getContentResolver().openInputStream(uri)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[4096];
+                int read;
+                while ((read = inputStream.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
                 }
-                keyContent.append(line).append("\n");
+                keyContent = buffer.toByteArray();
             }
-            reader.close();
 
-            // Validate key format
-            if (firstLine == null || firstLine.isEmpty()) {
-                Toast.makeText(this, "Empty key file", Toast.LENGTH_LONG).show();
-                return;
-            }
-
-            if (firstLine.contains("BEGIN OPENSSH PRIVATE KEY")) {
-                // OpenSSH format not supported by JSch
-                new AlertDialog.Builder(this)
-                        .setTitle("Unsupported Key Format")
-                        .setMessage("This key is in OpenSSH format, which is not supported.\n\n" +
-                                "Please convert it using:\n" +
-                                "ssh-keygen -p -m PEM -f ~/paste_key\n\n" +
-                                "Or generate a new key in PEM format:\n" +
-                                "ssh-keygen -t rsa -m PEM -f ~/paste_key")
-                        .setPositiveButton("OK", null)
-                        .show();
-                return;
-            }
+            String text = new String(keyContent, StandardCharsets.UTF_8).trim();
+            int newline = text.indexOf('\n');
+            String firstLine = newline < 0 ? text : text.substring(0, newline);
 
-            if (firstLine.contains("ENCRYPTED")) {
-                Toast.makeText(this, "Encrypted keys are not supported. Use a key without passphrase.", Toast.LENGTH_LONG).show();
+            // Validate key format
+            if (firstLine.isEmpty()) {
+                showToastOnUiThread("Empty key file");
                 return;
             }
 
             if (!firstLine.contains("BEGIN") || !firstLine.contains("PRIVATE KEY")) {
-                Toast.makeText(this, "Invalid key file format", Toast.LENGTH_LONG).show();
+                showToastOnUiThread("Invalid key file format");
                 return;
             }
 
-            // Save to app-private storage
-            File keyFile = new File(getFilesDir(), "id_rsa");
-            FileOutputStream fos = new FileOutputStream(keyFile);
-            fos.write(keyContent.toString().getBytes());
-            fos.close();
-
-            // Set file permissions to 600 (read/write owner only)
-            keyFile.setReadable(false, false);
-            keyFile.setReadable(true, true);
-            keyFile.setWritable(false, false);
-            keyFile.setWritable(true, true);
-            keyFile.setExecutable(false, false);
-
-            settingsManager.setHasSSHKey(true);
-            updateSendButtonState();
-            Toast.makeText(this, "SSH key imported successfully", Toast.LENGTH_SHORT).show();
+            // Parse it once now so a broken key is reported here, not on the first send.
+            // PEM and OpenSSH-format RSA, ECDSA and Ed25519 keys are accepted.
+            KeyPair keyPair = KeyPair.load(new JSch(), keyContent, null);
+            String type = keyPair.getKeyTypeString();
+            boolean encrypted = keyPair.isEncrypted();
+            keyPair.dispose();
+
+            // Save to app-private storage; a passphrase-protected key stays encrypted on disk
+            String keyPath = SshKeyStore.getInstance(this).saveKey(name, keyContent).getAbsolutePath();
+            Runnable imported = () -> {
+                settingsManager.setHasSSHKey(true);
+                updateSendButtonState();
+                updateAutoSync();
+                Toast.makeText(this, "SSH key \"" + name + "\" (" + type + ") imported successfully", Toast.LENGTH_SHORT).show();
+            };
+            if (encrypted) {
+                runOnUiThread(() -> promptPassphrase(keyPath, name, imported));
+            } else {
+                SshSessionPool.getInstance().preloadIdentity(keyPath);
+                runOnUiThread(imported);
+            }
         } catch (Exception e) {
-            Toast.makeText(this, "Error importing SSH key: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            showToastOnUiThread("Error importing SSH key: " + e.getMessage());
         }
     }
 
+    // Unlocks a passphrase-protected key for the rest of this session, then runs onUnlocked
+    private void promptPassphrase(String keyPath, String name, Runnable onUnlocked) {
+        EditText passphraseInput = new EditText(this);
+        passphraseInput.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_PASSWORD);
+        new AlertDialog.Builder(this)
+                .setTitle("Passphrase for key \"" + name + "\"")
+                .setView(passphraseInput)
+                .setPositiveButton("Unlock", (dialog, which) -> {
+                    byte[] passphrase = passphraseInput.getText().toString().getBytes(StandardCharsets.UTF_8);
+                    // Key derivation for OpenSSH keys is deliberately slow, keep it off the main thread
+                    new Thread(() -> {
+                        try {
+                            if (SshSessionPool.getInstance().unlockIdentity(keyPath, passphrase)) {
+                                runOnUiThread(onUnlocked);
+                            } else {
+                                showToastOnUiThread("Wrong passphrase for key \"" + name + "\"");
+                            }
+                        } catch (Exception e) {
+                            showToastOnUiThread("Error unlocking SSH key: " + e.getMessage());
+                        }
+                    }).start();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showToastOnUiThread(String message) {
+        runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_LONG).show());
+    }
+
     private void manageDestinations() {
         ManageDestinationsDialog.show(this, settingsManager, () -> {
             loadDestinations();
@@ -287,31 +484,35 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadDestinations() {
-        destinationRadioGroup.removeAllViews();
+        destinationList.removeAllViews();
         List<LinuxDestination> destinations = settingsManager.getDestinations();
-        int selectedIndex = settingsManager.getSelectedIndex();
-
-        for (int i = 0; i < destinations.size(); i++) {
-            LinuxDestination dest = destinations.get(i);
-            RadioButton radioButton = new RadioButton(this);
-            radioButton.setText(dest.toString());
-            radioButton.setId(i);
-            destinationRadioGroup.addView(radioButton);
-
-            if (i == selectedIndex) {
-                radioButton.setChecked(true);
-            }
+        Set<Long> selected = settingsManager.getSelectedIds();
+
+        for (LinuxDestination dest : destinations) {
+            CheckBox checkBox = new CheckBox(this);
+            checkBox.setText(dest.toString());
+            checkBox.setChecked(selected.contains(dest.getId()));
+            long id = dest.getId();
+            checkBox.setOnCheckedChangeListener((button, isChecked) -> {
+                if (isChecked) {
+                    selected.add(id);
+                } else {
+                    selected.remove(id);
+                }
+                settingsManager.setSelectedIds(selected);
+            });
+            destinationList.addView(checkBox);
         }
-
-        destinationRadioGroup.setOnCheckedChangeListener((group, checkedId) -> {
-            settingsManager.setSelectedIndex(checkedId);
-        });
     }
 
     private void updateSendButtonState() {
         boolean hasKey = settingsManager.hasSSHKey();
-        boolean hasDestinations = !settingsManager.getDestinations().isEmpty();
-        sendClipboardButton.setEnabled(hasKey && hasDestinations);
+        // Until the background load is done, leave the cache alone rather than read the database here
+        boolean hasDestinations = settingsManager.isDestinationsLoaded()
+                && !settingsManager.getDestinations().isEmpty();
+        // While the server runs, GET /clipboard clients can pick the text up without SSH
+        boolean clipboardClients = serverRunning && settingsManager.isClipboardSharing();
+        sendClipboardButton.setEnabled(clipboardClients || (hasKey && hasDestinations));
     }
 
     private void sendClipboardToLinux() {
@@ -330,38 +531,122 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        // Get selected destination
-        List<LinuxDestination> destinations = settingsManager.getDestinations();
-        int selectedIndex = settingsManager.getSelectedIndex();
-        
-        if (selectedIndex < 0 || selectedIndex >= destinations.size()) {
-            Toast.makeText(this, "Please select a destination", Toast.LENGTH_SHORT).show();
+        shareText(clipboardText, false);
+    }
+
+    // Clients long-polling GET /clipboard get the text at once if sharing is
+    // turned on; selected destinations also get it as a file over SSH
+    private void shareText(String text, boolean automatic) {
+        if (!settingsManager.isDestinationsLoaded()) {
+            // Picking targets reads the destinations; wait for the background load instead
+            settingsManager.loadDestinations(() -> runOnUiThread(() -> shareText(text, automatic)));
+            return;
+        }
+        boolean sharing = settingsManager.isClipboardSharing();
+        int waiting = sharing ? ClipboardFeed.getInstance().publish(text) : 0;
+        // With sharing on, no destination just means the text waits for GET /clipboard
+        if (sharing && selectedDestinations().isEmpty()) {
+            if (!automatic) {
+                String message = waiting > 0
+                        ? "Shared with " + waiting + " waiting client(s)" : "Shared for pickup";
+                Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+        sendToSelectedDestinations(text, automatic);
+    }
+
+    private List<LinuxDestination> selectedDestinations() {
+        Set<Long> selected = settingsManager.getSelectedIds();
+        List<LinuxDestination> targets = new ArrayList<>();
+        for (LinuxDestination destination : settingsManager.getDestinations()) {
+            if (selected.contains(destination.getId())) {
+                targets.add(destination);
+            }
+        }
+        return targets;
+    }
+
+    // Automatic sends from the clipboard watcher only speak up when something fails
+    private void sendToSelectedDestinations(String text, boolean automatic) {
+        List<LinuxDestination> targets = selectedDestinations();
+        if (targets.isEmpty()) {
+            if (!automatic) {
+                Toast.makeText(this, "Please select a destination", Toast.LENGTH_SHORT).show();
+            }
             return;
         }
 
-        LinuxDestination destination = destinations.get(selectedIndex);
-        File keyFile = new File(getFilesDir(), "id_rsa");
+        // Passphrase-protected keys are asked for once, then stay unlocked for the session
+        SshKeyStore keyStore = SshKeyStore.getInstance(this);
+        for (LinuxDestination target : targets) {
+            String keyPath = keyStore.getKeyPath(target);
+            if (SshSessionPool.getInstance().isLocked(keyPath)) {
+                String keyName = target.getKeyName() == null ? SshKeyStore.DEFAULT_KEY : target.getKeyName();
+                promptPassphrase(keyPath, keyName, () -> sendToSelectedDestinations(text, automatic));
+                return;
+            }
+        }
 
-        Toast.makeText(this, "Sending clipboard to " + destination.getName() + "...", Toast.LENGTH_SHORT).show();
+        if (!automatic) {
+            String names = targets.size() == 1 ? targets.get(0).getName() : targets.size() + " destinations";
+            Toast.makeText(this, "Sending clipboard to " + names + "...", Toast.LENGTH_SHORT).show();
+        }
 
-        SSHClientHelper.sendClipboardToLinux(destination, keyFile.getAbsolutePath(), clipboardText, 
-            new SSHClientHelper.TransferCallback() {
-                @Override
-                public void onSuccess(String filename) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, 
-                            "Sent successfully: " + filename, Toast.LENGTH_LONG).show();
-                    });
+        TransferQueue.getInstance().enqueueAll(targets, keyStore, text,
+            results -> runOnUiThread(() -> {
+                boolean failed = false;
+                for (TransferQueue.Result result : results) {
+                    failed |= !result.isSuccess();
                 }
-
-                @Override
-                public void onError(String error) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, 
-                            "Failed to send: " + error, Toast.LENGTH_LONG).show();
-                    });
+                if (!automatic || failed) {
+                    Toast.makeText(MainActivity.this, summarizeTransfers(results), Toast.LENGTH_LONG).show();
                 }
-            }
+            })
         );
     }
+
+    private void updateAutoSync() {
+        // GET /clipboard clients need no SSH key, so the watcher runs without one
+        boolean enabled = settingsManager.isAutoSync();
+        if (enabled && !clipboardWatcher.isRunning()) {
+            clipboardWatcher.start();
+            if (settingsManager.hasSSHKey()) {
+                // Connect now so the first copy does not wait for a handshake
+                TransferQueue.getInstance().warmUp(selectedDestinations(), SshKeyStore.getInstance(this));
+            }
+        } else if (!enabled) {
+            clipboardWatcher.stop();
+        }
+    }
+
+    private static String summarizeTransfers(List<TransferQueue.Result> results) {
+        if (results.size() == 1) {
+            TransferQueue.Result result = results.get(0);
+            return result.isSuccess()
+                ? "Sent successfully: " + result.getFilename()
+                : "Failed to send: " + result.getError();
+        }
+
+        List<String> sent = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (TransferQueue.Result result : results) {
+            String name = result.getDestination().getName();
+            if (result.isSuccess()) {
+                sent.add(name);
+            } else {
+                failed.add(name + " (" + result.getError() + ")");
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append("Sent to ").append(sent.size()).append("/").append(results.size());
+        if (!sent.isEmpty()) {
+            summary.append(": ").append(String.join(", ", sent));
+        }
+        if (!failed.isEmpty()) {
+            summary.append("\nFailed: ").append(String.join(", ", failed));
+        }
+        return summary.toString();
+    }
 }
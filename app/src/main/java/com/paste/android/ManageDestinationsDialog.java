@@ -1,5 +1,6 @@
 package com.paste.android;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.view.LayoutInflater;
@@ -10,6 +11,7 @@ import android.widget.Button;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ManageDestinationsDialog {
@@ -18,29 +20,41 @@ public class ManageDestinationsDialog {
         void onDestinationsChanged();
     }
 
-    public static void show(Context context, SettingsManager settingsManager, OnDestinationsChangedListener listener) {
-        List<LinuxDestination> destinations = settingsManager.getDestinations();
+    // Waits for the destinations to be loaded; every write runs on the destination
+    // thread and the list is updated once it is done
+    public static void show(Activity activity, SettingsManager settingsManager, OnDestinationsChangedListener listener) {
+        settingsManager.loadDestinations(() -> activity.runOnUiThread(() -> {
+            if (!activity.isFinishing()) {
+                showLoaded(activity, settingsManager, listener);
+            }
+        }));
+    }
+
+    private static void showLoaded(Activity activity, SettingsManager settingsManager,
+                                   OnDestinationsChangedListener listener) {
+        // The saved list is a shared read-only snapshot; edit a copy
+        List<LinuxDestination> destinations = new ArrayList<>(settingsManager.getDestinations());
 
-        View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_manage_destinations, null);
+        View dialogView = LayoutInflater.from(activity).inflate(R.layout.dialog_manage_destinations, null);
         ListView listView = dialogView.findViewById(R.id.destinationsListView);
         Button addButton = dialogView.findViewById(R.id.addDestinationButton);
 
-        DestinationAdapter adapter = new DestinationAdapter(context, destinations, settingsManager, listener);
+        DestinationAdapter adapter = new DestinationAdapter(activity, destinations, settingsManager, listener);
         listView.setAdapter(adapter);
 
-        AlertDialog dialog = new AlertDialog.Builder(context)
+        AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle("Manage Destinations")
                 .setView(dialogView)
                 .setPositiveButton("Done", null)
                 .create();
 
         addButton.setOnClickListener(v -> {
-            DestinationDialog.showAddDestinationDialog(context, destination -> {
-                destinations.add(destination);
-                settingsManager.saveDestinations(destinations);
-                adapter.notifyDataSetChanged();
-                listener.onDestinationsChanged();
-                Toast.makeText(context, "Destination added", Toast.LENGTH_SHORT).show();
+            DestinationDialog.showAddDestinationDialog(activity, destination -> {
+                settingsManager.addDestination(destination, () -> activity.runOnUiThread(() -> {
+                    adapter.add(destination);
+                    listener.onDestinationsChanged();
+                    Toast.makeText(activity, "Destination added", Toast.LENGTH_SHORT).show();
+                }));
             });
         });
 
@@ -48,12 +62,14 @@ public class ManageDestinationsDialog {
     }
 
     private static class DestinationAdapter extends ArrayAdapter<LinuxDestination> {
+        private final Activity activity;
         private final SettingsManager settingsManager;
         private final OnDestinationsChangedListener listener;
 
-        public DestinationAdapter(Context context, List<LinuxDestination> destinations, 
+        public DestinationAdapter(Activity activity, List<LinuxDestination> destinations,
                                  SettingsManager settingsManager, OnDestinationsChangedListener listener) {
-            super(context, 0, destinations);
+            super(activity, 0, destinations);
+            this.activity = activity;
             this.settingsManager = settingsManager;
             this.listener = listener;
         }
@@ -72,20 +88,24 @@ public class ManageDestinationsDialog {
             Button deleteButton = convertView.findViewById(R.id.deleteDestinationButton);
 
             nameText.setText(destination.getName());
-            detailsText.setText(destination.getUser() + "@" + destination.getHost() + ":" + 
-                               destination.getPort() + " → " + destination.getDirectory());
+            String details = destination.getUser() + "@" + destination.getHost() + ":" +
+                               destination.getPort() + " → " + destination.getDirectory();
+            if (destination.getKeyName() != null) {
+                details += " (key: " + destination.getKeyName() + ")";
+            }
+            detailsText.setText(details);
 
             editButton.setOnClickListener(v -> {
                 DestinationDialog.showEditDestinationDialog(getContext(), destination, editedDestination -> {
-                    destination.setName(editedDestination.getName());
-                    destination.setUser(editedDestination.getUser());
-                    destination.setHost(editedDestination.getHost());
-                    destination.setPort(editedDestination.getPort());
-                    destination.setDirectory(editedDestination.getDirectory());
-                    settingsManager.saveDestinations((List<LinuxDestination>) this.getAll());
-                    notifyDataSetChanged();
-                    listener.onDestinationsChanged();
-                    Toast.makeText(getContext(), "Destination updated", Toast.LENGTH_SHORT).show();
+                    // Replace rather than mutate: transfers may still hold the old object
+                    editedDestination.setId(destination.getId());
+                    settingsManager.updateDestination(editedDestination, () -> activity.runOnUiThread(() -> {
+                        int index = getPosition(destination);
+                        remove(destination);
+                        insert(editedDestination, index);
+                        listener.onDestinationsChanged();
+                        Toast.makeText(activity, "Destination updated", Toast.LENGTH_SHORT).show();
+                    }));
                 });
             });
 
@@ -94,11 +114,14 @@ public class ManageDestinationsDialog {
                         .setTitle("Delete Destination")
                         .setMessage("Delete " + destination.getName() + "?")
                         .setPositiveButton("Delete", (dialog, which) -> {
-                            remove(destination);
-                            settingsManager.saveDestinations((List<LinuxDestination>) this.getAll());
-                            notifyDataSetChanged();
-                            listener.onDestinationsChanged();
-                            Toast.makeText(getContext(), "Destination deleted", Toast.LENGTH_SHORT).show();
+                            settingsManager.deleteDestination(destination.getId(), () -> {
+                                forgetHostIfUnused(activity, settingsManager, destination);
+                                activity.runOnUiThread(() -> {
+                                    remove(destination);
+                                    listener.onDestinationsChanged();
+                                    Toast.makeText(activity, "Destination deleted", Toast.LENGTH_SHORT).show();
+                                });
+                            });
                         })
                         .setNegativeButton("Cancel", null)
                         .show();
@@ -107,12 +130,18 @@ public class ManageDestinationsDialog {
             return convertView;
         }
 
-        private Iterable<LinuxDestination> getAll() {
-            List<LinuxDestination> all = new java.util.ArrayList<>();
-            for (int i = 0; i < getCount(); i++) {
-                all.add(getItem(i));
+        // A host that no destination points at any more is forgotten, so
+        // re-adding it after a server reinstall trusts its new host key.
+        // Runs on the destination thread right after the delete.
+        private static void forgetHostIfUnused(Context context, SettingsManager settingsManager,
+                                               LinuxDestination deleted) {
+            for (LinuxDestination remaining : settingsManager.getDestinations()) {
+                if (remaining.getHost().equals(deleted.getHost()) && remaining.getPort() == deleted.getPort()) {
+                    return;
+                }
             }
-            return all;
+            KnownHostsStore.getInstance(context).forget(
+                    KnownHostsStore.hostIdOf(deleted.getHost(), deleted.getPort()));
         }
     }
 }
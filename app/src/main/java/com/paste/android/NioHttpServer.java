@@ -0,0 +1,444 @@
+package com.paste.android;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+// Event loop alternative to the blocking worker pool. One selector thread
+// accepts and does all socket reads and writes. Parsing, which spools large
+// bodies to disk, and handle() run on the given executor, one task per
+// connection at a time, so slow requests never stall the loop.
+public class NioHttpServer {
+    private static final int BUFFER_SIZE = 16384;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final int SELECT_TIMEOUT = 1000; // 1 second
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    public interface RequestHandler {
+        HttpResponse handle(HttpRequest request);
+
+        // Requests that wait for an event, e.g. long-polls; null means answer with handle()
+        default PendingResponse defer(HttpRequest request) {
+            return null;
+        }
+    }
+
+    // A response that is not ready yet. The loop asks again after every
+    // wakeup() and at least once per SELECT_TIMEOUT, so poll() must not block.
+    public interface PendingResponse {
+        HttpResponse poll(long now);
+
+        // The connection closed before poll() produced a response
+        void cancel();
+    }
+
+    private final int port;
+    private final int backlog;
+    private final Supplier<HttpRequestParser> parserFactory;
+    private final int keepAliveTimeoutSeconds;
+    private final int maxRequestsPerConnection;
+    private final RequestHandler handler;
+    private final Executor handlerExecutor;
+    private final ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    // Connections whose executor task has finished, handed back to the loop
+    private final ConcurrentLinkedQueue<Connection> processed = new ConcurrentLinkedQueue<>();
+    // Loop thread only: connections parked on a PendingResponse, and idle deadlines
+    private final Set<Connection> parked = new HashSet<>();
+    private final PriorityQueue<Connection> idleDeadlines =
+            new PriorityQueue<>((a, b) -> Long.compare(a.idleDeadline, b.idleDeadline));
+
+    private volatile boolean running;
+    private volatile boolean pollRequested;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread loopThread;
+
+    public NioHttpServer(int port, int backlog, int keepAliveTimeoutSeconds, int maxRequestsPerConnection,
+                         Supplier<HttpRequestParser> parserFactory, RequestHandler handler,
+                         Executor handlerExecutor) {
+        this.port = port;
+        this.backlog = backlog;
+        this.parserFactory = parserFactory;
+        this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.handler = handler;
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    public void start() {
+        running = true;
+        loopThread = new Thread(this::runLoop, "paste-nio-loop");
+        loopThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        wakeSelector();
+    }
+
+    // Call from any thread when a pending response may be ready
+    public void wakeup() {
+        pollRequested = true;
+        wakeSelector();
+    }
+
+    private void wakeSelector() {
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    private void runLoop() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port), backlog);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            long nextPollSweep = 0;
+            while (running) {
+                selector.select(SELECT_TIMEOUT);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+
+                Connection done;
+                while ((done = processed.poll()) != null) {
+                    done.onProcessed();
+                }
+                // Parked responses can only change on wakeup() or when their deadline passes
+                long now = System.currentTimeMillis();
+                if (pollRequested || now >= nextPollSweep) {
+                    pollRequested = false;
+                    nextPollSweep = now + SELECT_TIMEOUT;
+                    pollParkedConnections(now);
+                }
+                closeIdleConnections(now);
+            }
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key);
+            key.attach(connection);
+            scheduleIdleCheck(connection, connection.lastActivity);
+        }
+    }
+
+    private void pollParkedConnections(long now) {
+        for (Connection connection : new ArrayList<>(parked)) {
+            try {
+                connection.resume(now);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    // Each connection has one entry in the heap. An entry that comes due is
+    // checked against the connection's latest activity and pushed back if
+    // it has been busy since, so activity itself never touches the heap.
+    private void closeIdleConnections(long now) {
+        long timeout = keepAliveTimeoutSeconds * 1000L;
+        Connection head;
+        while ((head = idleDeadlines.peek()) != null && head.idleDeadline <= now) {
+            idleDeadlines.poll();
+            if (head.closed) {
+                continue;
+            }
+            if (head.busy || head.pending != null) {
+                // Working or waiting on a pending response is not idle
+                scheduleIdleCheck(head, now);
+            } else if (now - head.lastActivity >= timeout) {
+                head.close();
+            } else {
+                scheduleIdleCheck(head, head.lastActivity);
+            }
+        }
+    }
+
+    private void scheduleIdleCheck(Connection connection, long from) {
+        connection.idleDeadline = from + keepAliveTimeoutSeconds * 1000L;
+        idleDeadlines.add(connection);
+    }
+
+    private static HttpResponse busyResponse() {
+        return new HttpResponse(503, "Service Unavailable", "Server busy, retry later")
+                .addHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+    }
+
+    private void shutdown() {
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Fields are owned by the loop thread, except while busy: then the
+    // executor task owns readBuffer, parser, pendingWrites and the request
+    // state, and the loop leaves the connection alone until onProcessed().
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final HttpRequestParser parser = parserFactory.get();
+        private ByteBuffer readBuffer = bufferPool.acquire();
+        private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private boolean closeAfterWrite;
+        private PendingResponse pending;
+        private boolean pendingKeepAlive;
+        private int served;
+        private boolean busy;
+        private boolean closed;
+        private long lastActivity = System.currentTimeMillis();
+        private long idleDeadline;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            process();
+        }
+
+        // Hands the buffered bytes to the executor; nothing is read or
+        // written on this connection until the task comes back
+        private void process() throws IOException {
+            busy = true;
+            key.interestOps(0);
+            try {
+                handlerExecutor.execute(this::processRequests);
+            } catch (RejectedExecutionException e) {
+                busy = false;
+                queue(busyResponse(), false);
+                onWritable();
+            }
+        }
+
+        // Executor thread
+        private void processRequests() {
+            try {
+                // A single read may carry several pipelined requests; answer them in order
+                readBuffer.flip();
+                while (!closeAfterWrite && pending == null && readBuffer.hasRemaining()) {
+                    try {
+                        if (!parser.parse(readBuffer)) {
+                            break;
+                        }
+                        HttpRequest request = parser.takeRequest();
+                        served++;
+                        boolean keepAlive = request.isKeepAlive() && served < maxRequestsPerConnection;
+                        PendingResponse deferred = handler.defer(request);
+                        if (deferred == null) {
+                            queue(handle(request), keepAlive);
+                        } else {
+                            pending = deferred;
+                            pendingKeepAlive = keepAlive;
+                        }
+                    } catch (HttpRequestParser.ParseException e) {
+                        queue(e.toResponse(), false);
+                    } catch (IOException e) {
+                        // Spooling the body failed
+                        e.printStackTrace();
+                        queue(new HttpResponse(500, "Internal Server Error", "Request failed"), false);
+                    }
+                }
+                readBuffer.compact();
+            } finally {
+                processed.add(this);
+                wakeSelector();
+            }
+        }
+
+        private HttpResponse handle(HttpRequest request) {
+            try {
+                return handler.handle(request);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                return new HttpResponse(500, "Internal Server Error", "Request failed");
+            }
+        }
+
+        // Loop thread, once processRequests() has finished
+        void onProcessed() {
+            busy = false;
+            if (closed) {
+                release();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            try {
+                if (pending != null) {
+                    parked.add(this);
+                }
+                afterResponses();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Answers the pending response once it is ready, then carries on
+        // with any requests pipelined behind it
+        void resume(long now) throws IOException {
+            HttpResponse response = pending.poll(now);
+            if (response == null) {
+                return;
+            }
+            pending = null;
+            parked.remove(this);
+            queue(response, pendingKeepAlive);
+            lastActivity = now;
+            if (!closeAfterWrite && readBuffer.position() > 0) {
+                process();
+            } else {
+                afterResponses();
+            }
+        }
+
+        private void afterResponses() throws IOException {
+            if (!pendingWrites.isEmpty()) {
+                onWritable();
+            } else if (pending != null) {
+                // Nothing to read until the pending response has gone out
+                key.interestOps(0);
+            } else if (closeAfterWrite) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void queue(HttpResponse response, boolean keepAlive) {
+            if (keepAlive) {
+                response.setKeepAlive(keepAliveTimeoutSeconds, maxRequestsPerConnection - served);
+            } else {
+                closeAfterWrite = true;
+            }
+            pendingWrites.add(ByteBuffer.wrap(response.encode()));
+        }
+
+        void onWritable() throws IOException {
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer head = pendingWrites.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                pendingWrites.poll();
+            }
+            lastActivity = System.currentTimeMillis();
+
+            if (pendingWrites.isEmpty()) {
+                if (closeAfterWrite) {
+                    close();
+                } else {
+                    key.interestOps(pending == null ? SelectionKey.OP_READ : 0);
+                }
+            } else {
+                // Stop reading until the client drains its responses
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            // A running task still owns the rest; onProcessed() cleans up after it
+            if (!busy) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (pending != null) {
+                pending.cancel();
+                pending = null;
+            }
+            parked.remove(this);
+            if (readBuffer != null) {
+                bufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+            parser.reset();
+        }
+    }
+}
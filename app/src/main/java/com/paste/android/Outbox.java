@@ -0,0 +1,383 @@
+package com.paste.android;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Keeps clipboard sends that failed for transient reasons and retries them
+// later. Entries live in an append-only log in app storage so they survive
+// the process being killed. Retries back off exponentially with jitter,
+// restart immediately when a network comes back, and upload each
+// destination's backlog in batches over one session.
+public class Outbox {
+    private static final String OUTBOX_FILE = "outbox.log";
+    private static final int MAX_ENTRIES = 200;
+    private static final int BATCH_SIZE = 20;
+    private static final long BASE_RETRY_DELAY = 2000; // 2 seconds
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000; // 5 minutes
+    private static final int MIN_DEAD_RECORDS_TO_COMPACT = 64;
+
+    private static Outbox instance;
+
+    public static synchronized Outbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new Outbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private static class Entry {
+        final long id;
+        final LinuxDestination destination;
+        final String privateKeyPath;
+        final String filename;
+        final String content;
+        final boolean sync; // goes through DeltaSync rather than a plain upload
+
+        Entry(long id, LinuxDestination destination, String privateKeyPath, String filename, String content,
+              boolean sync) {
+            this.id = id;
+            this.destination = destination;
+            this.privateKeyPath = privateKeyPath;
+            this.filename = filename;
+            this.content = content;
+            this.sync = sync;
+        }
+
+        String groupKey() {
+            return groupKeyOf(destination, privateKeyPath);
+        }
+    }
+
+    private final File file;
+    // All state below is only touched on the retry thread
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    private final Random random = new Random();
+    private ScheduledFuture<?> pendingRetry;
+    private int failedAttempts;
+    private long nextId = 1;
+    private int deadRecords; // lines in the log that no longer describe a pending entry
+
+    private Outbox(Context context) {
+        file = new File(context.getFilesDir(), OUTBOX_FILE);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> {
+            load();
+            scheduleRetry();
+        });
+
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity != null) {
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    retryNow();
+                }
+            });
+        }
+    }
+
+    // Stores a failed send; it will be retried with backoff, as a sync when sync is set
+    public void add(LinuxDestination destination, String privateKeyPath, String content, String filename,
+                    boolean sync) {
+        scheduler.execute(() -> {
+            Entry entry = new Entry(nextId++, destination, privateKeyPath, filename, content, sync);
+            List<String> records = new ArrayList<>();
+            // A rolling sync file only needs its newest content
+            removeMatching(entry.groupKey(), filename, records);
+            records.add(toRecord(entry));
+
+            entries.put(entry.id, entry);
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (entries.size() > MAX_ENTRIES) {
+                records.add(doneRecord(oldest.next().id));
+                oldest.remove();
+                deadRecords += 2;
+            }
+            append(records);
+            scheduleRetry();
+        });
+    }
+
+    // Forgets queued sends of this file, e.g. once newer content reached it
+    public void discard(LinuxDestination destination, String privateKeyPath, String filename) {
+        scheduler.execute(() -> {
+            List<String> records = new ArrayList<>();
+            removeMatching(groupKeyOf(destination, privateKeyPath), filename, records);
+            append(records);
+        });
+    }
+
+    // A group is uploaded over one session, so it must share the identity too
+    private static String groupKeyOf(LinuxDestination destination, String privateKeyPath) {
+        return destination.getUser() + "@" + destination.getHost() + ":" + destination.getPort()
+                + destination.getDirectory() + " " + privateKeyPath;
+    }
+
+    private void removeMatching(String groupKey, String filename, List<String> records) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry queued = it.next();
+            if (queued.filename.equals(filename) && queued.groupKey().equals(groupKey)) {
+                records.add(doneRecord(queued.id));
+                it.remove();
+                deadRecords += 2;
+            }
+        }
+    }
+
+    // Drops any pending backoff and retries straight away, e.g. once a
+    // network is available again or another send has just gone through
+    public void retryNow() {
+        scheduler.execute(() -> {
+            if (pendingRetry != null) {
+                pendingRetry.cancel(false);
+                pendingRetry = null;
+            }
+            failedAttempts = 0;
+            drain();
+        });
+    }
+
+    private void scheduleRetry() {
+        if (entries.isEmpty() || (pendingRetry != null && !pendingRetry.isDone())) {
+            return;
+        }
+        // Equal jitter: half the backoff is fixed, the other half random
+        long delay = Math.min(MAX_RETRY_DELAY, BASE_RETRY_DELAY << Math.min(failedAttempts, 16));
+        long jittered = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        pendingRetry = scheduler.schedule(this::drain, jittered, TimeUnit.MILLISECONDS);
+    }
+
+    private void drain() {
+        pendingRetry = null;
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            List<Entry> group = groups.get(entry.groupKey());
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(entry.groupKey(), group);
+            }
+            group.add(entry);
+        }
+
+        boolean failed = false;
+        for (List<Entry> group : groups.values()) {
+            int start = 0;
+            while (start < group.size()) {
+                // A sync entry goes alone; plain uploads are batched up to the next one
+                int end = start + 1;
+                if (!group.get(start).sync) {
+                    while (end < group.size() && end - start < BATCH_SIZE && !group.get(end).sync) {
+                        end++;
+                    }
+                }
+                List<Entry> batch = group.subList(start, end);
+                int uploaded = uploadBatch(batch);
+                start += uploaded;
+                if (uploaded < batch.size()) {
+                    // Whatever failed (network, auth, host key, remote directory) is tied
+                    // to this destination, so the rest of its entries wait for the next retry
+                    failed = true;
+                    break;
+                }
+            }
+        }
+
+        if (failed) {
+            failedAttempts++;
+        } else {
+            failedAttempts = 0;
+        }
+        compact();
+        scheduleRetry();
+    }
+
+    // Returns how many entries of the batch were uploaded before a failure;
+    // the rest stay queued. A sync batch holds a single entry.
+    private int uploadBatch(List<Entry> batch) {
+        Entry first = batch.get(0);
+        List<String> contents = new ArrayList<>();
+        List<String> filenames = new ArrayList<>();
+        for (Entry entry : batch) {
+            contents.add(entry.content);
+            filenames.add(entry.filename);
+        }
+
+        List<String> records = new ArrayList<>();
+        int[] uploaded = new int[1];
+        try {
+            if (first.sync) {
+                SSHClientHelper.sync(first.destination, first.privateKeyPath, first.content);
+                records.add(doneRecord(first.id));
+                uploaded[0] = 1;
+            } else {
+                SSHClientHelper.uploadAll(first.destination, first.privateKeyPath, contents, filenames, index -> {
+                    records.add(doneRecord(batch.get(index).id));
+                    uploaded[0] = index + 1;
+                });
+            }
+        } catch (JSchException | SftpException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        for (int i = 0; i < uploaded[0]; i++) {
+            entries.remove(batch.get(i).id);
+            deadRecords += 2;
+        }
+        append(records);
+        return uploaded[0];
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                try {
+                    JSONObject record = new JSONObject(line);
+                    long id = record.getLong("id");
+                    nextId = Math.max(nextId, id + 1);
+                    if (record.has("done")) {
+                        entries.remove(id);
+                    } else {
+                        entries.put(id, fromRecord(record));
+                    }
+                } catch (JSONException e) {
+                    // A torn final line from a crash mid-append; skip it
+                    e.printStackTrace();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        deadRecords = lines - entries.size();
+    }
+
+    private void append(List<String> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            for (String record : records) {
+                writer.write(record);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Rewrites the log once most of it describes entries that are gone
+    private void compact() {
+        if (entries.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                return;
+            }
+            deadRecords = 0;
+            return;
+        }
+        if (deadRecords < MIN_DEAD_RECORDS_TO_COMPACT || deadRecords < entries.size()) {
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(toRecord(entry));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(file)) {
+            deadRecords = 0;
+        }
+    }
+
+    private static String toRecord(Entry entry) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put("id", entry.id);
+            record.put("name", entry.destination.getName());
+            record.put("user", entry.destination.getUser());
+            record.put("host", entry.destination.getHost());
+            record.put("port", entry.destination.getPort());
+            record.put("directory", entry.destination.getDirectory());
+            record.put("key", entry.privateKeyPath);
+            record.put("filename", entry.filename);
+            record.put("text", entry.content);
+            record.put("sync", entry.sync);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return record.toString();
+    }
+
+    private static String doneRecord(long id) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put("id", id);
+            record.put("done", true);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return record.toString();
+    }
+
+    private static Entry fromRecord(JSONObject record) throws JSONException {
+        LinuxDestination destination = new LinuxDestination(
+                record.getString("name"),
+                record.getString("user"),
+                record.getString("host"),
+                record.getInt("port"),
+                record.getString("directory"));
+        String filename = record.getString("filename");
+        // Records written before the flag existed are sync entries exactly when
+        // they target the rolling sync file
+        boolean sync = record.optBoolean("sync", DeltaSync.SYNC_FILENAME.equals(filename));
+        return new Entry(record.getLong("id"), destination, record.getString("key"),
+                filename, record.getString("text"), sync);
+    }
+}
@@ -0,0 +1,55 @@
+package com.paste.android;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+// Splits a /paste/batch body into snippets. application/x-ndjson bodies carry
+// one JSON string or {"text": "..."} object per line; any other content type
+// is treated as plain text with one snippet per line.
+public class PasteBatchReader {
+    public static final int MAX_SNIPPETS = 1000;
+
+    private PasteBatchReader() {
+    }
+
+    public static boolean isNdjson(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.US).contains("ndjson");
+    }
+
+    public static List<String> read(RequestBody body, boolean ndjson) throws IOException, JSONException {
+        List<String> snippets = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(body.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (snippets.size() == MAX_SNIPPETS) {
+                    throw new IOException("Batch exceeds " + MAX_SNIPPETS + " snippets");
+                }
+                snippets.add(ndjson ? parseJsonLine(line) : line);
+            }
+        }
+        return snippets;
+    }
+
+    private static String parseJsonLine(String line) throws JSONException {
+        Object value = new JSONTokener(line).nextValue();
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof JSONObject) {
+            return ((JSONObject) value).getString("text");
+        }
+        throw new JSONException("Expected a JSON string or {\"text\": ...} object");
+    }
+}
@@ -0,0 +1,464 @@
+package com.paste.android;
+
+import android.content.Context;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Every paste the server receives, kept in an append-only log split into
+// segment files under files/history. Whole segments are dropped, oldest
+// first, once the history outgrows MAX_HISTORY_SIZE or a segment only holds
+// pastes older than MAX_AGE. Memory holds per-entry offsets, a token index
+// for prefix search and an LRU of recently used texts; everything else is
+// read back from disk on demand.
+public class PasteHistory implements HttpServerService.OnTextReceivedListener {
+    private static final String HISTORY_DIR = "history";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long MAX_SEGMENT_SIZE = 512 * 1024; // 512KB
+    private static final long MAX_HISTORY_SIZE = 16 * 1024 * 1024; // 16MB
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000; // 30 days
+    private static final int MAX_CACHED_TEXTS = 100;
+    private static final int MAX_INDEXED_CHARS = 8192; // only the start of long pastes is searchable
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private static PasteHistory instance;
+
+    public static synchronized PasteHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new PasteHistory(new File(context.getApplicationContext().getFilesDir(), HISTORY_DIR));
+        }
+        return instance;
+    }
+
+    public static class Item {
+        private final long id;
+        private final long time;
+        private final String text;
+
+        Item(long id, long time, String text) {
+            this.id = id;
+            this.time = time;
+            this.text = text;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public interface SearchCallback {
+        // Called on the history thread, newest paste first
+        void onResults(List<Item> items);
+    }
+
+    private static class Segment {
+        final File file;
+        long size;
+        long newestTime;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    private static class Entry {
+        final long id;
+        final long time;
+        final Segment segment;
+        final long offset;
+        final int length; // of the record, without its newline
+
+        Entry(long id, long time, Segment segment, long offset, int length) {
+            this.id = id;
+            this.time = time;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // Ids of the entries containing a token, ascending because ids only grow
+    private static class Postings {
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        // Drops ids of evicted entries, which are always the lowest ones
+        void dropBelow(long firstLiveId) {
+            int dead = 0;
+            while (dead < size && ids[dead] < firstLiveId) {
+                dead++;
+            }
+            if (dead > 0) {
+                System.arraycopy(ids, dead, ids, 0, size - dead);
+                size -= dead;
+            }
+        }
+    }
+
+    private final File dir;
+    // All state below is only touched on the history thread
+    private final ExecutorService executor;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final TreeMap<Long, Entry> entries = new TreeMap<>();
+    private final TreeMap<String, Postings> index = new TreeMap<>();
+    private final Map<Long, String> recentTexts = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_CACHED_TEXTS;
+        }
+    };
+    private long nextId = 1;
+    private long nextSegment = 1;
+    private long totalSize;
+    private boolean segmentTorn;
+
+    private PasteHistory(File dir) {
+        this.dir = dir;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "paste-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::load);
+    }
+
+    @Override
+    public void onTextReceived(String text) {
+        add(text);
+    }
+
+    @Override
+    public void onTextsReceived(List<String> texts) {
+        for (String text : texts) {
+            add(text);
+        }
+    }
+
+    // Safe to call from any thread; the write happens on the history thread
+    public void add(String text) {
+        long time = System.currentTimeMillis();
+        executor.execute(() -> append(text, time));
+    }
+
+    // Finds pastes containing a word starting with each word of the query,
+    // e.g. "git reb" finds "git rebase -i HEAD~3". An empty query lists the newest.
+    public void search(String query, int limit, SearchCallback callback) {
+        executor.execute(() -> callback.onResults(find(query, limit)));
+    }
+
+    private void append(String text, long time) {
+        long id = nextId;
+        byte[] record = (toRecord(id, time, text) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.size >= MAX_SEGMENT_SIZE || segmentTorn) {
+            segment = new Segment(new File(dir, SEGMENT_PREFIX + nextSegment++ + SEGMENT_SUFFIX));
+            segments.addLast(segment);
+            segmentTorn = false;
+        }
+        try (FileOutputStream out = new FileOutputStream(segment.file, true)) {
+            out.write(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+            // A partial write leaves a torn line that load() cuts off; later
+            // records go to a new segment so they do not join it
+            totalSize += segment.file.length() - segment.size;
+            segment.size = segment.file.length();
+            segmentTorn = true;
+            return;
+        }
+
+        nextId++;
+        entries.put(id, new Entry(id, time, segment, segment.size, record.length - 1));
+        segment.size += record.length;
+        segment.newestTime = time;
+        totalSize += record.length;
+        addToIndex(id, text);
+        recentTexts.put(id, text);
+        evict(time);
+    }
+
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<Long> numbers = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        numbers.sort(null);
+
+        for (long number : numbers) {
+            Segment segment = new Segment(new File(dir, SEGMENT_PREFIX + number + SEGMENT_SUFFIX));
+            loadSegment(segment);
+            segments.addLast(segment);
+            totalSize += segment.size;
+            nextSegment = number + 1;
+        }
+        evict(System.currentTimeMillis());
+    }
+
+    // Streams through a segment once, indexing each record without keeping its text
+    private void loadSegment(Segment segment) {
+        long position = 0;
+        long lineStart = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(segment.file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                try {
+                    JSONObject record = new JSONObject(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                    long id = record.getLong("id");
+                    long time = record.getLong("time");
+                    entries.put(id, new Entry(id, time, segment, lineStart, line.size()));
+                    addToIndex(id, record.getString("text"));
+                    segment.newestTime = Math.max(segment.newestTime, time);
+                    nextId = Math.max(nextId, id + 1);
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                line.reset();
+                lineStart = position;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (line.size() > 0) {
+            // A torn final record from a crash mid-append; cut it off so the
+            // next record starts on a fresh line
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+                file.setLength(lineStart);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            position = lineStart;
+        }
+        segment.size = position;
+    }
+
+    private void evict(long now) {
+        boolean evicted = false;
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            boolean tooBig = totalSize > MAX_HISTORY_SIZE && segments.size() > 1;
+            boolean tooOld = oldest.newestTime < now - MAX_AGE;
+            if (!tooBig && !tooOld) {
+                break;
+            }
+            segments.removeFirst();
+            totalSize -= oldest.size;
+            oldest.file.delete();
+            // Segments hold consecutive ids, so the oldest segment's entries come first
+            while (!entries.isEmpty() && entries.firstEntry().getValue().segment == oldest) {
+                recentTexts.remove(entries.pollFirstEntry().getKey());
+            }
+            evicted = true;
+        }
+
+        if (evicted) {
+            long firstLiveId = entries.isEmpty() ? nextId : entries.firstKey();
+            Iterator<Postings> it = index.values().iterator();
+            while (it.hasNext()) {
+                Postings postings = it.next();
+                postings.dropBelow(firstLiveId);
+                if (postings.size == 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void addToIndex(long id, String text) {
+        for (String token : tokenize(text.length() > MAX_INDEXED_CHARS ? text.substring(0, MAX_INDEXED_CHARS) : text)) {
+            Postings postings = index.get(token);
+            if (postings == null) {
+                postings = new Postings();
+                index.put(token, postings);
+            }
+            postings.add(id);
+        }
+    }
+
+    private List<Item> find(String query, int limit) {
+        List<Long> ids = new ArrayList<>();
+        Set<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            for (long id : entries.descendingKeySet()) {
+                if (ids.size() == limit) {
+                    break;
+                }
+                ids.add(id);
+            }
+        } else {
+            long[] matches = null;
+            for (String token : tokens) {
+                long[] hits = prefixMatches(token);
+                matches = matches == null ? hits : intersect(matches, hits);
+                if (matches.length == 0) {
+                    break;
+                }
+            }
+            for (int i = matches.length - 1; i >= 0 && ids.size() < limit; i--) {
+                ids.add(matches[i]);
+            }
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (long id : ids) {
+            Entry entry = entries.get(id);
+            String text = textOf(entry);
+            if (text != null) {
+                items.add(new Item(id, entry.time, text));
+            }
+        }
+        return items;
+    }
+
+    // Ids of entries with any token starting with the prefix, sorted and unique
+    private long[] prefixMatches(String prefix) {
+        Map<String, Postings> range = index.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        int total = 0;
+        for (Postings postings : range.values()) {
+            total += postings.size;
+        }
+        long[] ids = new long[total];
+        int size = 0;
+        for (Postings postings : range.values()) {
+            System.arraycopy(postings.ids, 0, ids, size, postings.size);
+            size += postings.size;
+        }
+        if (range.size() > 1) {
+            Arrays.sort(ids);
+            int unique = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            ids = Arrays.copyOf(ids, unique);
+        }
+        return ids;
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, size);
+    }
+
+    private String textOf(Entry entry) {
+        String text = recentTexts.get(entry.id);
+        if (text != null) {
+            return text;
+        }
+        byte[] record = new byte[entry.length];
+        try (RandomAccessFile file = new RandomAccessFile(entry.segment.file, "r")) {
+            file.seek(entry.offset);
+            file.readFully(record);
+            text = new JSONObject(new String(record, StandardCharsets.UTF_8)).getString("text");
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+        recentTexts.put(entry.id, text);
+        return text;
+    }
+
+    // Lower-cased runs of letters, digits and '_'
+    private static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                String token = text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH));
+                tokens.add(token.toLowerCase(Locale.US));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String toRecord(long id, long time, String text) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put("id", id);
+            record.put("time", time);
+            record.put("text", text);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return record.toString();
+    }
+}
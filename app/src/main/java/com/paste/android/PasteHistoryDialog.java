@@ -0,0 +1,102 @@
+package com.paste.android;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+public class PasteHistoryDialog {
+    private static final int MAX_RESULTS = 50;
+    private static final int MAX_PREVIEW_LENGTH = 300;
+
+    // onCopied sees each entry before it is put on the clipboard
+    public static void show(Activity activity, Consumer<String> onCopied) {
+        View dialogView = LayoutInflater.from(activity).inflate(R.layout.dialog_paste_history, null);
+        EditText searchInput = dialogView.findViewById(R.id.historySearchInput);
+        ListView listView = dialogView.findViewById(R.id.historyListView);
+
+        HistoryAdapter adapter = new HistoryAdapter(activity, new ArrayList<>());
+        listView.setAdapter(adapter);
+
+        PasteHistory history = PasteHistory.getInstance(activity);
+        // Searches run in order on the history thread, so the last results shown match the last query
+        PasteHistory.SearchCallback showResults = items -> activity.runOnUiThread(() -> {
+            adapter.clear();
+            adapter.addAll(items);
+        });
+
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                history.search(s.toString(), MAX_RESULTS, showResults);
+            }
+        });
+
+        listView.setOnItemClickListener((parent, view, position, id) -> {
+            String text = adapter.getItem(position).getText();
+            onCopied.accept(text);
+            ClipboardManager clipboard = (ClipboardManager) activity.getSystemService(Context.CLIPBOARD_SERVICE);
+            clipboard.setPrimaryClip(ClipData.newPlainText("Received Text", text));
+            Toast.makeText(activity, "Copied to clipboard", Toast.LENGTH_SHORT).show();
+        });
+
+        new AlertDialog.Builder(activity)
+                .setTitle("Received Text History")
+                .setView(dialogView)
+                .setPositiveButton("Done", null)
+                .show();
+
+        history.search("", MAX_RESULTS, showResults);
+    }
+
+    private static class HistoryAdapter extends ArrayAdapter<PasteHistory.Item> {
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+
+        public HistoryAdapter(Context context, List<PasteHistory.Item> items) {
+            super(context, 0, items);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = LayoutInflater.from(getContext()).inflate(
+                    R.layout.item_history, parent, false);
+            }
+
+            PasteHistory.Item item = getItem(position);
+            TextView timeText = convertView.findViewById(R.id.historyTimeText);
+            TextView previewText = convertView.findViewById(R.id.historyPreviewText);
+
+            timeText.setText(timeFormat.format(new Date(item.getTime())));
+            String text = item.getText().trim();
+            previewText.setText(text.length() > MAX_PREVIEW_LENGTH ? text.substring(0, MAX_PREVIEW_LENGTH) + "…" : text);
+
+            return convertView;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.paste.android;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Request body that stays in memory up to a threshold and then spills to a
+// spool file, so memory use is bounded no matter how large the upload is
+public class RequestBody {
+    private static final int PREVIEW_BYTES = 4096;
+    private static final int SCRATCH_SIZE = 16384;
+
+    private final int memoryThreshold;
+    private final File spoolDir;
+    private byte[] memory;
+    private int buffered;
+    private long length;
+    private File spoolFile;
+    private FileOutputStream spoolStream;
+    private FileChannel spoolChannel;
+    private byte[] scratch;
+
+    public RequestBody(int initialCapacity, int memoryThreshold, File spoolDir) {
+        this.memoryThreshold = memoryThreshold;
+        this.spoolDir = spoolDir;
+        this.memory = new byte[Math.min(initialCapacity, memoryThreshold)];
+    }
+
+    // Consumes count bytes from src
+    void write(ByteBuffer src, int count) throws IOException {
+        if (spoolChannel == null && length + count <= memoryThreshold) {
+            ensureCapacity(buffered + count);
+            src.get(memory, buffered, count);
+            buffered += count;
+            length += count;
+            return;
+        }
+        if (spoolChannel == null) {
+            spill();
+        }
+        ByteBuffer slice = src.duplicate();
+        slice.limit(slice.position() + count);
+        if (buffered < PREVIEW_BYTES) {
+            // Keep enough of the head in memory for the preview
+            int keep = Math.min(count, PREVIEW_BYTES - buffered);
+            ensureCapacity(buffered + keep);
+            slice.duplicate().get(memory, buffered, keep);
+            buffered += keep;
+        }
+        writeFully(slice);
+        src.position(src.position() + count);
+        length += count;
+    }
+
+    // Reads at most max bytes straight from in into the body storage.
+    // Returns the number of bytes read, or -1 at end of stream.
+    int readFrom(InputStream in, int max) throws IOException {
+        if (spoolChannel == null && length + max <= memoryThreshold) {
+            ensureCapacity(buffered + max);
+            int n = in.read(memory, buffered, max);
+            if (n > 0) {
+                buffered += n;
+                length += n;
+            }
+            return n;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int n = in.read(scratch, 0, Math.min(max, scratch.length));
+        if (n > 0) {
+            write(ByteBuffer.wrap(scratch, 0, n), n);
+        }
+        return n;
+    }
+
+    // Called once the last byte has been written
+    void finish() throws IOException {
+        if (spoolStream != null) {
+            spoolStream.close();
+            spoolStream = null;
+            spoolChannel = null;
+        }
+    }
+
+    // Drops a body that was never handed out, e.g. after a broken upload
+    void discard() {
+        try {
+            finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (spoolFile != null) {
+            spoolFile.delete();
+            spoolFile = null;
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public boolean isSpooled() {
+        return spoolFile != null;
+    }
+
+    public File getFile() {
+        return spoolFile;
+    }
+
+    public String getText() {
+        if (isSpooled()) {
+            throw new IllegalStateException("Body spooled to " + spoolFile + ", use openStream()");
+        }
+        return new String(memory, 0, buffered, StandardCharsets.UTF_8);
+    }
+
+    // First few KB of the body, cut on a UTF-8 character boundary
+    public String getPreview() {
+        int end = Math.min(buffered, PREVIEW_BYTES);
+        if (end < length) {
+            while (end > 0 && (memory[end] & 0xC0) == 0x80) {
+                end--;
+            }
+        }
+        return new String(memory, 0, end, StandardCharsets.UTF_8);
+    }
+
+    public InputStream openStream() throws IOException {
+        if (isSpooled()) {
+            return new FileInputStream(spoolFile);
+        }
+        return new ByteArrayInputStream(memory, 0, buffered);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > memory.length) {
+            int size = Math.max(needed, Math.min(Math.max(memory.length * 2, 1024), memoryThreshold));
+            byte[] grown = new byte[size];
+            System.arraycopy(memory, 0, grown, 0, buffered);
+            memory = grown;
+        }
+    }
+
+    private void spill() throws IOException {
+        if (spoolDir == null) {
+            throw new IOException("No spool directory configured");
+        }
+        if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+            throw new IOException("Cannot create " + spoolDir);
+        }
+        spoolFile = File.createTempFile("paste_", ".txt", spoolDir);
+        spoolStream = new FileOutputStream(spoolFile);
+        spoolChannel = spoolStream.getChannel();
+        // The in-memory prefix is written out but kept for the preview
+        writeFully(ByteBuffer.wrap(memory, 0, buffered));
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            spoolChannel.write(src);
+        }
+    }
+}
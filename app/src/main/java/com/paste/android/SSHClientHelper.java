@@ -1,87 +1,106 @@
 package com.paste.android;
 
-import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchChangedHostKeyException;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
+import com.jcraft.jsch.JSchUnknownHostKeyException;
 import com.jcraft.jsch.SftpException;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.Properties;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
 
 public class SSHClientHelper {
-    private static final int TIMEOUT = 30000; // 30 seconds
-
     public interface TransferCallback {
         void onSuccess(String filename);
         void onError(String error);
     }
 
-    public static void sendClipboardToLinux(
-            LinuxDestination destination,
-            String privateKeyPath,
-            String clipboardContent,
-            TransferCallback callback) {
-
-        new Thread(() -> {
-            Session session = null;
-            ChannelSftp channelSftp = null;
-
-            try {
-                // Generate filename with timestamp
-                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
-                String filename = "clipboard_" + timestamp + ".txt";
-
-                // Setup JSch (modern fork with algorithm support)
-                JSch jsch = new JSch();
-                jsch.addIdentity(privateKeyPath);
-
-                // Create session
-                session = jsch.getSession(destination.getUser(), destination.getHost(), destination.getPort());
-                
-                // Configure for modern SSH servers
-                Properties config = new Properties();
-                config.put("StrictHostKeyChecking", "no");
-                // Modern fork supports newer algorithms automatically
-                
-                session.setConfig(config);
-                session.setTimeout(TIMEOUT);
+    // Uploads content over the destination's pooled session, blocking the caller
+    static void upload(LinuxDestination destination, String privateKeyPath, CharSequence content, String filename)
+            throws JSchException, SftpException {
+        uploadAll(destination, privateKeyPath, Collections.singletonList(content),
+                Collections.singletonList(filename), index -> { });
+    }
 
-                // Connect
-                session.connect();
+    // Uploads several files over one pooled session, calling onUploaded with
+    // the index of each file once it is on the remote side
+    static void uploadAll(LinuxDestination destination, String privateKeyPath,
+                          List<? extends CharSequence> contents, List<String> filenames, IntConsumer onUploaded)
+            throws JSchException, SftpException {
+        int[] next = new int[1];
+        withSession(destination, privateKeyPath, pooled -> {
+            // A retry on a fresh session resumes after the last file that landed
+            for (; next[0] < contents.size(); next[0]++) {
+                String remotePath = pooled.resolve(destination.getDirectory(), filenames.get(next[0]));
+                // Encoded chunk by chunk while SFTP pulls it; never a full byte[] copy
+                pooled.getSftp().put(new Utf8InputStream(contents.get(next[0]),
+                        SshSessionPool.getInstance().getWriteBufferSize()), remotePath);
+                onUploaded.accept(next[0]);
+            }
+        });
+    }
 
-                // Open SFTP channel
-                Channel channel = session.openChannel("sftp");
-                channel.connect();
-                channelSftp = (ChannelSftp) channel;
+    // Brings the destination's rolling sync file up to date, sending only what
+    // changed. Returns false when it already held this content.
+    static boolean sync(LinuxDestination destination, String privateKeyPath, CharSequence content)
+            throws JSchException, SftpException {
+        boolean[] written = new boolean[1];
+        withSession(destination, privateKeyPath, pooled -> {
+            String remotePath = pooled.resolve(destination.getDirectory(), DeltaSync.SYNC_FILENAME);
+            String stateKey = destination.getUser() + "@" + destination.getHost() + ":"
+                    + destination.getPort() + remotePath;
+            written[0] = DeltaSync.getInstance().sync(pooled.getSftp(), stateKey, remotePath, content);
+        });
+        return written[0];
+    }
 
-                // Change to target directory
-                channelSftp.cd(destination.getDirectory());
+    // Opens the destination's pooled session ahead of time so the next send skips the handshake
+    static void warmUp(LinuxDestination destination, String privateKeyPath) throws JSchException, SftpException {
+        withSession(destination, privateKeyPath, pooled -> { });
+    }
 
-                // Upload file
-                InputStream inputStream = new ByteArrayInputStream(clipboardContent.getBytes("UTF-8"));
-                channelSftp.put(inputStream, filename);
+    private interface SessionTask {
+        void run(SshSessionPool.PooledSession pooled) throws SftpException;
+    }
 
-                callback.onSuccess(filename);
+    private static void withSession(LinuxDestination destination, String privateKeyPath, SessionTask task)
+            throws JSchException, SftpException {
+        SshSessionPool pool = SshSessionPool.getInstance();
 
-            } catch (JSchException e) {
-                callback.onError("SSH Error: " + e.getMessage());
+        // A pooled session may have died while idle; retry once on a fresh one
+        for (int attempt = 0; ; attempt++) {
+            SshSessionPool.PooledSession pooled = pool.acquire(destination, privateKeyPath);
+            try {
+                task.run(pooled);
+                pool.release(pooled);
+                return;
             } catch (SftpException e) {
-                callback.onError("SFTP Error: " + e.getMessage());
-            } catch (Exception e) {
-                callback.onError("Error: " + e.getMessage());
-            } finally {
-                if (channelSftp != null && channelSftp.isConnected()) {
-                    channelSftp.disconnect();
+                if (!isRetryable(e)) {
+                    // Remote-side failure, the session itself is fine
+                    pool.release(pooled);
+                    throw e;
                 }
-                if (session != null && session.isConnected()) {
-                    session.disconnect();
+                pool.invalidate(pooled);
+                if (attempt > 0 || !pooled.isReused()) {
+                    throw e;
                 }
+            } catch (RuntimeException e) {
+                pool.invalidate(pooled);
+                throw e;
             }
-        }).start();
+        }
+    }
+
+    // Whether a failed transfer may succeed later without the user changing anything
+    static boolean isRetryable(Exception e) {
+        if (e instanceof SftpException) {
+            int id = ((SftpException) e).id;
+            return id != ChannelSftp.SSH_FX_NO_SUCH_FILE && id != ChannelSftp.SSH_FX_PERMISSION_DENIED;
+        }
+        // A host key that changed or cannot be verified needs the user, not a retry
+        if (e instanceof JSchChangedHostKeyException || e instanceof JSchUnknownHostKeyException) {
+            return false;
+        }
+        return e instanceof JSchException;
     }
 }
@@ -0,0 +1,136 @@
+package com.paste.android;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.Switch;
+import android.widget.Toast;
+
+// Tuning that has no switch on the main screen. Server values are read
+// when the server starts, so they apply after a restart; SFTP values apply
+// from the next transfer.
+public class ServerSettingsDialog {
+    private static final int MAX_WORKER_THREADS = 64;
+    private static final int MAX_QUEUE_CAPACITY = 10000;
+    private static final int MAX_ACCEPT_BACKLOG = 1024;
+    private static final int MAX_KEEP_ALIVE_SECONDS = 300;
+    private static final int MAX_REQUESTS_PER_CONNECTION = 100000;
+    private static final int MAX_PORT = 65535;
+    private static final int MAX_SFTP_BULK_REQUESTS = 64;
+    private static final int MAX_SFTP_WRITE_BUFFER_KB = 1024;
+
+    public static void show(Context context, SettingsManager settings) {
+        View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_server_settings, null);
+
+        Switch nioSwitch = dialogView.findViewById(R.id.serverModeNio);
+        EditText workerThreadsInput = dialogView.findViewById(R.id.serverWorkerThreads);
+        EditText queueCapacityInput = dialogView.findViewById(R.id.serverQueueCapacity);
+        EditText acceptBacklogInput = dialogView.findViewById(R.id.serverAcceptBacklog);
+        EditText keepAliveInput = dialogView.findViewById(R.id.serverKeepAliveTimeout);
+        EditText maxRequestsInput = dialogView.findViewById(R.id.serverMaxRequests);
+        EditText framedPortInput = dialogView.findViewById(R.id.framedPort);
+        EditText udpPortInput = dialogView.findViewById(R.id.udpPort);
+        EditText udpGroupInput = dialogView.findViewById(R.id.udpMulticastGroup);
+        EditText bulkRequestsInput = dialogView.findViewById(R.id.sftpBulkRequests);
+        EditText writeBufferInput = dialogView.findViewById(R.id.sftpWriteBufferKb);
+
+        nioSwitch.setChecked(SettingsManager.SERVER_MODE_NIO.equals(settings.getServerMode()));
+        workerThreadsInput.setText(String.valueOf(settings.getServerWorkerThreads()));
+        queueCapacityInput.setText(String.valueOf(settings.getServerQueueCapacity()));
+        acceptBacklogInput.setText(String.valueOf(settings.getServerAcceptBacklog()));
+        keepAliveInput.setText(String.valueOf(settings.getServerKeepAliveTimeoutSeconds()));
+        maxRequestsInput.setText(String.valueOf(settings.getServerMaxRequestsPerConnection()));
+        framedPortInput.setText(String.valueOf(settings.getFramedPort()));
+        udpPortInput.setText(String.valueOf(settings.getUdpPort()));
+        String udpGroup = settings.getUdpMulticastGroup();
+        udpGroupInput.setText(udpGroup != null ? udpGroup : "");
+        bulkRequestsInput.setText(String.valueOf(settings.getSftpBulkRequests()));
+        writeBufferInput.setText(String.valueOf(settings.getSftpWriteBufferSize() / 1024));
+
+        new AlertDialog.Builder(context)
+                .setTitle("Server Settings")
+                .setView(dialogView)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    int workerThreads;
+                    int queueCapacity;
+                    int acceptBacklog;
+                    int keepAliveSeconds;
+                    int maxRequests;
+                    int framedPort;
+                    int udpPort;
+                    String multicastGroup;
+                    int bulkRequests;
+                    int writeBufferSize;
+                    try {
+                        workerThreads = readInt(workerThreadsInput, "Worker threads", 1, MAX_WORKER_THREADS);
+                        queueCapacity = readInt(queueCapacityInput, "Queued connections", 1, MAX_QUEUE_CAPACITY);
+                        acceptBacklog = readInt(acceptBacklogInput, "Accept backlog", 1, MAX_ACCEPT_BACKLOG);
+                        keepAliveSeconds = readInt(keepAliveInput, "Keep-alive timeout", 1, MAX_KEEP_ALIVE_SECONDS);
+                        maxRequests = readInt(maxRequestsInput, "Requests per connection", 1,
+                                MAX_REQUESTS_PER_CONNECTION);
+                        framedPort = readInt(framedPortInput, "Framed port", 0, MAX_PORT);
+                        udpPort = readInt(udpPortInput, "UDP port", 0, MAX_PORT);
+                        multicastGroup = readMulticastGroup(udpGroupInput);
+                        bulkRequests = readInt(bulkRequestsInput, "SFTP writes in flight", 1, MAX_SFTP_BULK_REQUESTS);
+                        writeBufferSize = readInt(writeBufferInput, "SFTP write chunk", 1, MAX_SFTP_WRITE_BUFFER_KB) * 1024;
+                    } catch (IllegalArgumentException e) {
+                        Toast.makeText(context, e.getMessage(), Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+
+                    settings.setServerMode(nioSwitch.isChecked()
+                            ? SettingsManager.SERVER_MODE_NIO : SettingsManager.SERVER_MODE_BLOCKING);
+                    settings.setServerWorkerThreads(workerThreads);
+                    settings.setServerQueueCapacity(queueCapacity);
+                    settings.setServerAcceptBacklog(acceptBacklog);
+                    settings.setServerKeepAliveTimeoutSeconds(keepAliveSeconds);
+                    settings.setServerMaxRequestsPerConnection(maxRequests);
+                    settings.setFramedPort(framedPort);
+                    settings.setUdpPort(udpPort);
+                    settings.setUdpMulticastGroup(multicastGroup);
+                    settings.setSftpBulkRequests(bulkRequests);
+                    settings.setSftpWriteBufferSize(writeBufferSize);
+                    SshSessionPool.getInstance().setTransferTuning(bulkRequests, writeBufferSize);
+                    Toast.makeText(context, "Saved", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private static int readInt(EditText input, String label, int min, int max) {
+        try {
+            int value = Integer.parseInt(input.getText().toString().trim());
+            if (value >= min && value <= max) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(label + " must be between " + min + " and " + max);
+    }
+
+    // Accepts an empty field or a dotted IPv4 address in 224.0.0.0/4; checked by
+    // hand because resolving a name here would touch the network on the UI thread
+    private static String readMulticastGroup(EditText input) {
+        String group = input.getText().toString().trim();
+        if (group.isEmpty()) {
+            return "";
+        }
+        String[] parts = group.split("\\.");
+        boolean valid = parts.length == 4;
+        for (int i = 0; valid && i < parts.length; i++) {
+            try {
+                int octet = Integer.parseInt(parts[i]);
+                valid = octet >= 0 && octet <= 255 && (i > 0 || (octet >= 224 && octet <= 239));
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Multicast group must be an address from 224.0.0.0 to 239.255.255.255");
+        }
+        return group;
+    }
+}
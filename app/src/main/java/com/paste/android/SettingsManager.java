@@ -5,23 +5,238 @@ import android.content.SharedPreferences;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 
 public class SettingsManager {
     private static final String PREFS_NAME = "PasteToAndroidPrefs";
     private static final String KEY_DESTINATIONS = "destinations";
     private static final String KEY_SELECTED_INDEX = "selected_index";
+    private static final String KEY_SELECTED_INDICES = "selected_indices";
+    private static final String KEY_SELECTED_IDS = "selected_ids";
     private static final String KEY_HAS_SSH_KEY = "has_ssh_key";
+    private static final String KEY_SERVER_WORKER_THREADS = "server_worker_threads";
+    private static final String KEY_SERVER_QUEUE_CAPACITY = "server_queue_capacity";
+    private static final String KEY_SERVER_ACCEPT_BACKLOG = "server_accept_backlog";
+    private static final String KEY_SERVER_MODE = "server_mode";
+    private static final String KEY_SERVER_KEEP_ALIVE_TIMEOUT = "server_keep_alive_timeout";
+    private static final String KEY_SERVER_MAX_REQUESTS = "server_max_requests_per_connection";
+    private static final String KEY_SERVER_MAX_STREAM_LENGTH = "server_max_stream_length";
+    private static final String KEY_FRAMED_PORT = "framed_port";
+    private static final String KEY_UDP_PORT = "udp_port";
+    private static final String KEY_UDP_MULTICAST_GROUP = "udp_multicast_group";
+    private static final String KEY_SYNC_MODE = "sync_mode";
+    private static final String KEY_SSH_COMPRESSION = "ssh_compression";
+    private static final String KEY_AUTO_SYNC = "auto_sync";
+    private static final String KEY_LAST_SENT_CLIP_HASH = "last_sent_clip_hash";
+    private static final String KEY_CLIPBOARD_SHARING = "clipboard_sharing";
+    private static final String KEY_CLIPBOARD_TOKEN = "clipboard_token";
+    private static final String KEY_SFTP_BULK_REQUESTS = "sftp_bulk_requests";
+    private static final String KEY_SFTP_WRITE_BUFFER_SIZE = "sftp_write_buffer_size";
+
+    public static final String SERVER_MODE_BLOCKING = "blocking";
+    public static final String SERVER_MODE_NIO = "nio";
+
+    private static final int DEFAULT_SERVER_WORKER_THREADS = 4;
+    private static final int DEFAULT_SERVER_QUEUE_CAPACITY = 64;
+    private static final int DEFAULT_SERVER_ACCEPT_BACKLOG = 128;
+    private static final int DEFAULT_SERVER_KEEP_ALIVE_TIMEOUT = 15; // seconds
+    private static final int DEFAULT_SERVER_MAX_REQUESTS = 100;
+    private static final long DEFAULT_SERVER_MAX_STREAM_LENGTH = 64L * 1024 * 1024; // 64MB
+    private static final int DEFAULT_SFTP_BULK_REQUESTS = 16;
+    private static final int DEFAULT_SFTP_WRITE_BUFFER_SIZE = 32 * 1024; // 32KB
 
     private final SharedPreferences prefs;
+    private final DestinationStore store;
 
     public SettingsManager(Context context) {
         this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.store = DestinationStore.getInstance(context);
+    }
+
+    // Destinations shared by every SettingsManager in the process. A snapshot
+    // is never modified: each add, edit or delete writes one row and swaps in
+    // a new snapshot, so readers need no lock and never hit the database.
+    private static final class DestinationCache {
+        final List<LinuxDestination> list;
+        final Map<Long, LinuxDestination> byId = new HashMap<>();
+        final Map<String, LinuxDestination> byName = new HashMap<>();
+        final Map<String, LinuxDestination> byHost = new HashMap<>();
+
+        DestinationCache(List<LinuxDestination> destinations) {
+            this.list = Collections.unmodifiableList(destinations);
+            for (LinuxDestination destination : destinations) {
+                byId.put(destination.getId(), destination);
+                // First entry wins when several share a name or host
+                if (!byName.containsKey(destination.getName())) {
+                    byName.put(destination.getName(), destination);
+                }
+                if (!byHost.containsKey(destination.getHost())) {
+                    byHost.put(destination.getHost(), destination);
+                }
+            }
+        }
+    }
+
+    private static volatile DestinationCache destinationCache;
+
+    // The load and every write run in order on this thread, never on the main thread
+    private static final ExecutorService destinationExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "destination-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Opens the database, migrates and fills the cache on the destination thread,
+    // so the first getDestinations() on the main thread does no disk I/O.
+    // onLoaded runs on that thread, after any write queued before it.
+    public void loadDestinations(Runnable onLoaded) {
+        destinationExecutor.execute(() -> {
+            destinations();
+            onLoaded.run();
+        });
     }
 
+    public boolean isDestinationsLoaded() {
+        return destinationCache != null;
+    }
+
+    // The returned list and its destinations are shared; copy before changing them
     public List<LinuxDestination> getDestinations() {
-        String json = prefs.getString(KEY_DESTINATIONS, "[]");
+        return destinations().list;
+    }
+
+    public LinuxDestination getDestination(long id) {
+        return destinations().byId.get(id);
+    }
+
+    public LinuxDestination findDestinationByName(String name) {
+        return destinations().byName.get(name);
+    }
+
+    public LinuxDestination findDestinationByHost(String host) {
+        return destinations().byHost.get(host);
+    }
+
+    // Stores a new destination and sets its id on the destination thread; onDone runs there afterwards
+    public void addDestination(LinuxDestination destination, Runnable onDone) {
+        destinationExecutor.execute(() -> {
+            addDestination(destination);
+            onDone.run();
+        });
+    }
+
+    public void updateDestination(LinuxDestination destination, Runnable onDone) {
+        destinationExecutor.execute(() -> {
+            updateDestination(destination);
+            onDone.run();
+        });
+    }
+
+    public void deleteDestination(long id, Runnable onDone) {
+        destinationExecutor.execute(() -> {
+            deleteDestination(id);
+            onDone.run();
+        });
+    }
+
+    // onImported gets the number added and runs on the destination thread
+    public void importDestinations(List<LinuxDestination> destinations, IntConsumer onImported) {
+        destinationExecutor.execute(() -> onImported.accept(importDestinations(destinations)));
+    }
+
+    private void addDestination(LinuxDestination destination) {
+        synchronized (SettingsManager.class) {
+            LinuxDestination saved = copyOf(destination);
+            store.insert(saved);
+            destination.setId(saved.getId());
+            List<LinuxDestination> list = new ArrayList<>(destinations().list);
+            list.add(saved);
+            destinationCache = new DestinationCache(list);
+        }
+    }
+
+    private void updateDestination(LinuxDestination destination) {
+        synchronized (SettingsManager.class) {
+            LinuxDestination saved = copyOf(destination);
+            store.update(saved);
+            List<LinuxDestination> list = new ArrayList<>(destinations().list);
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getId() == saved.getId()) {
+                    list.set(i, saved);
+                }
+            }
+            destinationCache = new DestinationCache(list);
+        }
+    }
+
+    private void deleteDestination(long id) {
+        synchronized (SettingsManager.class) {
+            store.delete(id);
+            List<LinuxDestination> list = new ArrayList<>(destinations().list);
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).getId() == id) {
+                    list.remove(i);
+                }
+            }
+            destinationCache = new DestinationCache(list);
+        }
+    }
+
+    // Adds every destination whose name is not taken yet, in one transaction.
+    // Returns how many were added.
+    private int importDestinations(List<LinuxDestination> destinations) {
+        synchronized (SettingsManager.class) {
+            DestinationCache cache = destinations();
+            Set<String> names = new HashSet<>(cache.byName.keySet());
+            List<LinuxDestination> added = new ArrayList<>();
+            for (LinuxDestination destination : destinations) {
+                if (names.add(destination.getName())) {
+                    added.add(copyOf(destination));
+                }
+            }
+            if (!added.isEmpty()) {
+                store.insertAll(added);
+                List<LinuxDestination> list = new ArrayList<>(cache.list);
+                list.addAll(added);
+                destinationCache = new DestinationCache(list);
+            }
+            return added.size();
+        }
+    }
+
+    private DestinationCache destinations() {
+        DestinationCache cache = destinationCache;
+        if (cache == null) {
+            synchronized (SettingsManager.class) {
+                cache = destinationCache;
+                if (cache == null) {
+                    migrateLegacyDestinations();
+                    cache = new DestinationCache(store.loadAll());
+                    destinationCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    // Older versions kept the whole list as one JSON string in preferences
+    private void migrateLegacyDestinations() {
+        String json = prefs.getString(KEY_DESTINATIONS, null);
+        if (json == null) {
+            return;
+        }
         List<LinuxDestination> destinations = new ArrayList<>();
         
         try {
@@ -40,35 +255,74 @@ public class SettingsManager {
             e.printStackTrace();
         }
         
-        return destinations;
+        // A table that already has rows was migrated by a run that died before the remove below
+        store.insertAllIfEmpty(destinations);
+        prefs.edit().remove(KEY_DESTINATIONS).commit();
     }
 
-    public void saveDestinations(List<LinuxDestination> destinations) {
-        JSONArray array = new JSONArray();
-        
-        try {
-            for (LinuxDestination dest : destinations) {
-                JSONObject obj = new JSONObject();
-                obj.put("name", dest.getName());
-                obj.put("user", dest.getUser());
-                obj.put("host", dest.getHost());
-                obj.put("port", dest.getPort());
-                obj.put("directory", dest.getDirectory());
-                array.put(obj);
+    private static LinuxDestination copyOf(LinuxDestination destination) {
+        LinuxDestination copy = new LinuxDestination(destination.getName(), destination.getUser(),
+                destination.getHost(), destination.getPort(), destination.getDirectory());
+        copy.setId(destination.getId());
+        copy.setKeyName(destination.getKeyName());
+        return copy;
+    }
+
+    // Ids of the destinations ticked for sending. Older versions stored list
+    // positions instead; those are mapped onto the current list.
+    public Set<Long> getSelectedIds() {
+        Set<Long> ids = new HashSet<>();
+        String stored = prefs.getString(KEY_SELECTED_IDS, null);
+        if (stored != null) {
+            for (String part : stored.split(",")) {
+                if (!part.isEmpty()) {
+                    try {
+                        ids.add(Long.parseLong(part));
+                    } catch (NumberFormatException e) {
+                        e.printStackTrace();
+                    }
+                }
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+            return ids;
         }
-        
-        prefs.edit().putString(KEY_DESTINATIONS, array.toString()).apply();
+
+        List<LinuxDestination> destinations = getDestinations();
+        for (int index : getLegacySelectedIndices()) {
+            if (index >= 0 && index < destinations.size()) {
+                ids.add(destinations.get(index).getId());
+            }
+        }
+        return ids;
     }
 
-    public int getSelectedIndex() {
-        return prefs.getInt(KEY_SELECTED_INDEX, 0);
+    public void setSelectedIds(Collection<Long> ids) {
+        StringBuilder stored = new StringBuilder();
+        for (long id : new TreeSet<>(ids)) {
+            if (stored.length() > 0) {
+                stored.append(',');
+            }
+            stored.append(id);
+        }
+        prefs.edit().putString(KEY_SELECTED_IDS, stored.toString()).apply();
     }
 
-    public void setSelectedIndex(int index) {
-        prefs.edit().putInt(KEY_SELECTED_INDEX, index).apply();
+    private List<Integer> getLegacySelectedIndices() {
+        String stored = prefs.getString(KEY_SELECTED_INDICES, null);
+        List<Integer> indices = new ArrayList<>();
+        if (stored == null) {
+            indices.add(prefs.getInt(KEY_SELECTED_INDEX, 0));
+            return indices;
+        }
+        for (String part : stored.split(",")) {
+            if (!part.isEmpty()) {
+                try {
+                    indices.add(Integer.parseInt(part));
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return indices;
     }
 
     public boolean hasSSHKey() {
@@ -78,4 +332,166 @@ public class SettingsManager {
     public void setHasSSHKey(boolean hasKey) {
         prefs.edit().putBoolean(KEY_HAS_SSH_KEY, hasKey).apply();
     }
+
+    public int getServerWorkerThreads() {
+        return Math.max(1, prefs.getInt(KEY_SERVER_WORKER_THREADS, DEFAULT_SERVER_WORKER_THREADS));
+    }
+
+    public void setServerWorkerThreads(int threads) {
+        prefs.edit().putInt(KEY_SERVER_WORKER_THREADS, threads).apply();
+    }
+
+    public int getServerQueueCapacity() {
+        return Math.max(1, prefs.getInt(KEY_SERVER_QUEUE_CAPACITY, DEFAULT_SERVER_QUEUE_CAPACITY));
+    }
+
+    public void setServerQueueCapacity(int capacity) {
+        prefs.edit().putInt(KEY_SERVER_QUEUE_CAPACITY, capacity).apply();
+    }
+
+    public int getServerAcceptBacklog() {
+        return Math.max(1, prefs.getInt(KEY_SERVER_ACCEPT_BACKLOG, DEFAULT_SERVER_ACCEPT_BACKLOG));
+    }
+
+    public void setServerAcceptBacklog(int backlog) {
+        prefs.edit().putInt(KEY_SERVER_ACCEPT_BACKLOG, backlog).apply();
+    }
+
+    public String getServerMode() {
+        return prefs.getString(KEY_SERVER_MODE, SERVER_MODE_BLOCKING);
+    }
+
+    public void setServerMode(String mode) {
+        prefs.edit().putString(KEY_SERVER_MODE, mode).apply();
+    }
+
+    public int getServerKeepAliveTimeoutSeconds() {
+        return Math.max(1, prefs.getInt(KEY_SERVER_KEEP_ALIVE_TIMEOUT, DEFAULT_SERVER_KEEP_ALIVE_TIMEOUT));
+    }
+
+    public void setServerKeepAliveTimeoutSeconds(int seconds) {
+        prefs.edit().putInt(KEY_SERVER_KEEP_ALIVE_TIMEOUT, seconds).apply();
+    }
+
+    public int getServerMaxRequestsPerConnection() {
+        return Math.max(1, prefs.getInt(KEY_SERVER_MAX_REQUESTS, DEFAULT_SERVER_MAX_REQUESTS));
+    }
+
+    public void setServerMaxRequestsPerConnection(int maxRequests) {
+        prefs.edit().putInt(KEY_SERVER_MAX_REQUESTS, maxRequests).apply();
+    }
+
+    // Upper bound for streamed uploads spooled to disk
+    public long getServerMaxStreamLength() {
+        return prefs.getLong(KEY_SERVER_MAX_STREAM_LENGTH, DEFAULT_SERVER_MAX_STREAM_LENGTH);
+    }
+
+    public void setServerMaxStreamLength(long length) {
+        prefs.edit().putLong(KEY_SERVER_MAX_STREAM_LENGTH, length).apply();
+    }
+
+    // Port for the binary framed protocol (FramedPasteServer); 0 leaves it off
+    public int getFramedPort() {
+        return prefs.getInt(KEY_FRAMED_PORT, 0);
+    }
+
+    public void setFramedPort(int port) {
+        prefs.edit().putInt(KEY_FRAMED_PORT, port).apply();
+    }
+
+    // Port for fire-and-forget UDP pastes (DatagramPasteReceiver); 0 leaves it off
+    public int getUdpPort() {
+        return prefs.getInt(KEY_UDP_PORT, 0);
+    }
+
+    public void setUdpPort(int port) {
+        prefs.edit().putInt(KEY_UDP_PORT, port).apply();
+    }
+
+    // Multicast group the UDP listener also joins, e.g. 239.255.42.99; null for unicast only
+    public String getUdpMulticastGroup() {
+        String group = prefs.getString(KEY_UDP_MULTICAST_GROUP, null);
+        return group == null || group.trim().isEmpty() ? null : group.trim();
+    }
+
+    public void setUdpMulticastGroup(String group) {
+        prefs.edit().putString(KEY_UDP_MULTICAST_GROUP, group).apply();
+    }
+
+    // Outstanding SFTP write requests per channel; more keeps a slow link full
+    public int getSftpBulkRequests() {
+        return Math.max(1, prefs.getInt(KEY_SFTP_BULK_REQUESTS, DEFAULT_SFTP_BULK_REQUESTS));
+    }
+
+    public void setSftpBulkRequests(int requests) {
+        prefs.edit().putInt(KEY_SFTP_BULK_REQUESTS, requests).apply();
+    }
+
+    public int getSftpWriteBufferSize() {
+        return Math.max(1024, prefs.getInt(KEY_SFTP_WRITE_BUFFER_SIZE, DEFAULT_SFTP_WRITE_BUFFER_SIZE));
+    }
+
+    public void setSftpWriteBufferSize(int bytes) {
+        prefs.edit().putInt(KEY_SFTP_WRITE_BUFFER_SIZE, bytes).apply();
+    }
+
+    // Keep one rolling file per destination and send only what changed
+    public boolean isSyncMode() {
+        return prefs.getBoolean(KEY_SYNC_MODE, false);
+    }
+
+    public void setSyncMode(boolean enabled) {
+        prefs.edit().putBoolean(KEY_SYNC_MODE, enabled).apply();
+    }
+
+    public boolean isSshCompression() {
+        return prefs.getBoolean(KEY_SSH_COMPRESSION, false);
+    }
+
+    public void setSshCompression(boolean enabled) {
+        prefs.edit().putBoolean(KEY_SSH_COMPRESSION, enabled).apply();
+    }
+
+    public boolean isAutoSync() {
+        return prefs.getBoolean(KEY_AUTO_SYNC, false);
+    }
+
+    public void setAutoSync(boolean enabled) {
+        prefs.edit().putBoolean(KEY_AUTO_SYNC, enabled).apply();
+    }
+
+    public String getLastSentClipHash() {
+        return prefs.getString(KEY_LAST_SENT_CLIP_HASH, "");
+    }
+
+    public void setLastSentClipHash(String hash) {
+        prefs.edit().putString(KEY_LAST_SENT_CLIP_HASH, hash).apply();
+    }
+
+    // Whether GET /clipboard may hand shared text to Linux clients; off by default
+    public boolean isClipboardSharing() {
+        return prefs.getBoolean(KEY_CLIPBOARD_SHARING, false);
+    }
+
+    public void setClipboardSharing(boolean enabled) {
+        prefs.edit().putBoolean(KEY_CLIPBOARD_SHARING, enabled).apply();
+    }
+
+    // Secret that GET /clipboard clients send as X-Paste-Token; created on first use
+    public String getClipboardToken() {
+        synchronized (SettingsManager.class) {
+            String token = prefs.getString(KEY_CLIPBOARD_TOKEN, null);
+            if (token == null) {
+                byte[] random = new byte[16];
+                new SecureRandom().nextBytes(random);
+                StringBuilder hex = new StringBuilder();
+                for (byte b : random) {
+                    hex.append(String.format("%02x", b));
+                }
+                token = hex.toString();
+                prefs.edit().putString(KEY_CLIPBOARD_TOKEN, token).apply();
+            }
+            return token;
+        }
+    }
 }
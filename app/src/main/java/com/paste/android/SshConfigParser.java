@@ -0,0 +1,215 @@
+package com.paste.android;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Turns the Host entries of an OpenSSH client config (~/.ssh/config) into
+// destinations. Every concrete alias becomes one destination, with HostName,
+// User and Port resolved the way ssh does: first value wins, across every
+// Host block that matches, including wildcard defaults such as "Host *".
+public class SshConfigParser {
+    private static final int DEFAULT_PORT = 22;
+
+    public static class Result {
+        public final List<LinuxDestination> destinations;
+        public final int skipped; // aliases without a User anywhere in the config
+
+        Result(List<LinuxDestination> destinations, int skipped) {
+            this.destinations = destinations;
+            this.skipped = skipped;
+        }
+    }
+
+    private static class Block {
+        final List<String> patterns;
+        final Map<String, String> options = new HashMap<>();
+
+        Block(List<String> patterns) {
+            this.patterns = patterns;
+        }
+
+        boolean isLiteral() {
+            for (String pattern : patterns) {
+                if (pattern.startsWith("!") || pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matches(String alias) {
+            boolean matched = false;
+            for (String pattern : patterns) {
+                if (pattern.startsWith("!")) {
+                    if (glob(pattern.substring(1), alias)) {
+                        return false;
+                    }
+                } else if (glob(pattern, alias)) {
+                    matched = true;
+                }
+            }
+            return matched;
+        }
+    }
+
+    // Reads the config and returns one destination per alias, all using the given directory
+    public static Result parse(Reader source, String directory) throws IOException {
+        List<Block> blocks = readBlocks(source);
+
+        // Aliases are looked up through an index of literal Host lines, and only
+        // wildcard blocks are tested one by one, so large configs stay linear
+        Map<String, List<Integer>> literal = new HashMap<>();
+        List<Integer> wildcard = new ArrayList<>();
+        Set<String> aliases = new LinkedHashSet<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (!block.isLiteral()) {
+                wildcard.add(i);
+                continue;
+            }
+            for (String pattern : block.patterns) {
+                List<Integer> hits = literal.get(pattern);
+                if (hits == null) {
+                    hits = new ArrayList<>();
+                    literal.put(pattern, hits);
+                }
+                hits.add(i);
+                aliases.add(pattern);
+            }
+        }
+        // Concrete names that only appear next to negations, e.g. "Host web !web-old"
+        for (int i : wildcard) {
+            for (String pattern : blocks.get(i).patterns) {
+                if (!pattern.startsWith("!") && pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+                    aliases.add(pattern);
+                }
+            }
+        }
+
+        List<LinuxDestination> destinations = new ArrayList<>();
+        int skipped = 0;
+        for (String alias : aliases) {
+            List<Integer> order = new ArrayList<>();
+            List<Integer> hits = literal.get(alias);
+            if (hits != null) {
+                order.addAll(hits);
+            }
+            for (int i : wildcard) {
+                if (blocks.get(i).matches(alias)) {
+                    order.add(i);
+                }
+            }
+            Collections.sort(order);
+
+            Map<String, String> options = new HashMap<>();
+            for (int i : order) {
+                for (Map.Entry<String, String> option : blocks.get(i).options.entrySet()) {
+                    if (!options.containsKey(option.getKey())) {
+                        options.put(option.getKey(), option.getValue());
+                    }
+                }
+            }
+
+            String user = options.get("user");
+            if (user == null) {
+                skipped++;
+                continue;
+            }
+            String host = options.get("hostname");
+            host = host == null ? alias : host.replace("%h", alias);
+            destinations.add(new LinuxDestination(alias, user, host, parsePort(options.get("port")), directory));
+        }
+        return new Result(destinations, skipped);
+    }
+
+    private static List<Block> readBlocks(Reader source) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        Block current = null;
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            // "Keyword value" or "Keyword=value"
+            int split = 0;
+            while (split < line.length() && !Character.isWhitespace(line.charAt(split)) && line.charAt(split) != '=') {
+                split++;
+            }
+            String keyword = line.substring(0, split).toLowerCase(Locale.US);
+            String value = line.substring(split).trim();
+            if (value.startsWith("=")) {
+                value = value.substring(1).trim();
+            }
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+
+            if (keyword.equals("host")) {
+                List<String> patterns = new ArrayList<>();
+                for (String pattern : value.split("\\s+")) {
+                    if (!pattern.isEmpty()) {
+                        patterns.add(pattern);
+                    }
+                }
+                current = new Block(patterns);
+                blocks.add(current);
+            } else if (keyword.equals("match")) {
+                // Match conditions are not evaluated; the block applies to nothing
+                current = new Block(Collections.<String>emptyList());
+                blocks.add(current);
+            } else if (current != null && !current.options.containsKey(keyword)) {
+                current.options.put(keyword, value);
+            }
+        }
+        return blocks;
+    }
+
+    private static int parsePort(String port) {
+        if (port == null) {
+            return DEFAULT_PORT;
+        }
+        try {
+            int value = Integer.parseInt(port);
+            return value >= 1 && value <= 65535 ? value : DEFAULT_PORT;
+        } catch (NumberFormatException e) {
+            return DEFAULT_PORT;
+        }
+    }
+
+    // ssh_config patterns: '*' matches any run of characters, '?' exactly one
+    private static boolean glob(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int mark = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
@@ -0,0 +1,102 @@
+package com.paste.android;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Named private keys in app-private storage. "default" is the original
+// files/id_rsa and is used by destinations that do not name a key; other
+// keys live under files/ssh_keys/<name>.
+public class SshKeyStore {
+    public static final String DEFAULT_KEY = "default";
+    private static final String LEGACY_KEY_FILE = "id_rsa";
+    private static final String KEY_DIR = "ssh_keys";
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private static SshKeyStore instance;
+
+    public static synchronized SshKeyStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SshKeyStore(context.getApplicationContext().getFilesDir());
+        }
+        return instance;
+    }
+
+    private final File filesDir;
+    private final File keyDir;
+
+    private SshKeyStore(File filesDir) {
+        this.filesDir = filesDir;
+        this.keyDir = new File(filesDir, KEY_DIR);
+    }
+
+    public static boolean isValidName(String name) {
+        return VALID_NAME.matcher(name).matches() && !name.equals(".") && !name.equals("..");
+    }
+
+    // Blank or null names mean the default key
+    public File getKeyFile(String name) {
+        if (name == null || name.isEmpty() || name.equals(DEFAULT_KEY)) {
+            return new File(filesDir, LEGACY_KEY_FILE);
+        }
+        return new File(keyDir, name);
+    }
+
+    public String getKeyPath(LinuxDestination destination) {
+        return getKeyFile(destination.getKeyName()).getAbsolutePath();
+    }
+
+    public boolean hasKey(String name) {
+        return getKeyFile(name).isFile();
+    }
+
+    // Key names, default first
+    public List<String> listKeys() {
+        List<String> names = new ArrayList<>();
+        if (hasKey(DEFAULT_KEY)) {
+            names.add(DEFAULT_KEY);
+        }
+        String[] stored = keyDir.list();
+        if (stored != null) {
+            Arrays.sort(stored);
+            for (String name : stored) {
+                if (isValidName(name) && !name.endsWith(".tmp")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    // Writes the key readable by the owner only, replacing any key of that name
+    public File saveKey(String name, byte[] content) throws IOException {
+        File keyFile = getKeyFile(name);
+        File parent = keyFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        File temp = new File(parent, keyFile.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            fos.write(content);
+        }
+
+        // Set file permissions to 600 (read/write owner only)
+        temp.setReadable(false, false);
+        temp.setReadable(true, true);
+        temp.setWritable(false, false);
+        temp.setWritable(true, true);
+        temp.setExecutable(false, false);
+
+        if (!temp.renameTo(keyFile)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + keyFile);
+        }
+        return keyFile;
+    }
+}
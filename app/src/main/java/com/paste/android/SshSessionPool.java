@@ -0,0 +1,413 @@
+package com.paste.android;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Identity;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Logger;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps one live SSH session and SFTP channel per login and key so repeat
+// sends skip the key load, handshake and channel setup. Sessions are kept
+// alive with SSH keepalives and closed after sitting idle.
+public class SshSessionPool {
+    private static final int TIMEOUT = 30000; // 30 seconds
+    private static final int KEEPALIVE_INTERVAL = 15000; // 15 seconds
+    private static final int KEEPALIVE_MAX_COUNT = 3;
+    private static final long IDLE_TIMEOUT = 5 * 60 * 1000; // 5 minutes
+    private static final long EVICTION_PERIOD = 30; // seconds
+    private static final int DEFAULT_BULK_REQUESTS = 16;
+    private static final String[] NEGOTIATED_ALGORITHMS = {
+            "kex", "server_host_key", "cipher.c2s", "cipher.s2c", "mac.c2s", "mac.s2c"};
+    // Tried first with hosts we have not negotiated with yet: AES-GCM is
+    // hardware-accelerated on ARMv8 phones and needs no separate MAC pass
+    private static final Map<String, String> PREFERRED_ALGORITHMS = new HashMap<>();
+
+    static {
+        PREFERRED_ALGORITHMS.put("cipher.c2s", "aes128-gcm@openssh.com");
+        PREFERRED_ALGORITHMS.put("cipher.s2c", "aes128-gcm@openssh.com");
+    }
+
+    private static final SshSessionPool INSTANCE = new SshSessionPool();
+
+    public static SshSessionPool getInstance() {
+        return INSTANCE;
+    }
+
+    public static class PooledSession {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Session session;
+        private ChannelSftp sftp;
+        private String home;
+        private boolean reused;
+        private boolean compressed;
+        private volatile long lastUsed;
+
+        PooledSession(String key) {
+            this.key = key;
+            // Not idle yet: evictIdle() must leave it alone until its first acquire() is done
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public ChannelSftp getSftp() {
+            return sftp;
+        }
+
+        // True when this session was already connected before the current acquire()
+        public boolean isReused() {
+            return reused;
+        }
+
+        // Resolves a destination directory against the remote home directory
+        public String resolve(String directory, String filename) throws SftpException {
+            if (directory.equals("~")) {
+                directory = "";
+            } else if (directory.startsWith("~/")) {
+                directory = directory.substring(2);
+            }
+            if (!directory.startsWith("/")) {
+                if (home == null) {
+                    home = sftp.getHome();
+                }
+                directory = directory.isEmpty() ? home : home + "/" + directory;
+            }
+            return directory.endsWith("/") ? directory + filename : directory + "/" + filename;
+        }
+
+        boolean isAlive() {
+            return session != null && session.isConnected() && sftp != null && sftp.isConnected()
+                    && !sftp.isClosed();
+        }
+
+        void disconnect() {
+            if (sftp != null && sftp.isConnected()) {
+                sftp.disconnect();
+            }
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+            sftp = null;
+            session = null;
+            home = null;
+        }
+    }
+
+    private final Map<String, PooledSession> sessions = new HashMap<>();
+    private volatile KnownHostsStore knownHosts;
+    private volatile boolean compression;
+    // One JSch per key file holding its parsed identity, reused for the life of the process
+    private final Map<String, CachedIdentity> identities = new HashMap<>();
+    private volatile int bulkRequests = DEFAULT_BULK_REQUESTS;
+    private volatile int writeBufferSize = Utf8InputStream.DEFAULT_CHUNK_SIZE;
+
+    private SshSessionPool() {
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ssh-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.SECONDS);
+    }
+
+    // Returns a connected session for the destination, locked for the caller.
+    // Every acquire() must be paired with release() or invalidate().
+    public PooledSession acquire(LinuxDestination destination, String privateKeyPath) throws JSchException {
+        String key = keyOf(destination, privateKeyPath);
+        PooledSession pooled;
+        while (true) {
+            synchronized (this) {
+                pooled = sessions.get(key);
+                if (pooled == null) {
+                    pooled = new PooledSession(key);
+                    sessions.put(key, pooled);
+                }
+            }
+            pooled.lock.lock();
+            synchronized (this) {
+                // evictIdle() or closeAll() may have dropped it while we waited for the lock;
+                // a session connected on an entry outside the map would never be closed
+                if (sessions.get(key) == pooled) {
+                    break;
+                }
+            }
+            pooled.lock.unlock();
+        }
+
+        try {
+            pooled.reused = pooled.isAlive() && pooled.compressed == compression;
+            if (!pooled.reused) {
+                pooled.disconnect();
+                connect(pooled, destination, privateKeyPath);
+            }
+            pooled.sftp.setBulkRequests(bulkRequests);
+            return pooled;
+        } catch (JSchException | RuntimeException e) {
+            pooled.disconnect();
+            pooled.lock.unlock();
+            throw e;
+        }
+    }
+
+    // Applies to every channel from the next acquire(): how many SFTP writes
+    // may be in flight at once, and how much text is encoded per write chunk
+    public void setTransferTuning(int bulkRequests, int writeBufferSize) {
+        this.bulkRequests = Math.max(1, bulkRequests);
+        this.writeBufferSize = Math.max(1024, writeBufferSize);
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    // Verifies and remembers host keys, and the algorithms each host negotiated
+    public void setKnownHosts(KnownHostsStore knownHosts) {
+        this.knownHosts = knownHosts;
+    }
+
+    // zlib compression; sessions opened with the other setting reconnect on their next acquire()
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public void release(PooledSession pooled) {
+        pooled.lastUsed = System.currentTimeMillis();
+        pooled.lock.unlock();
+    }
+
+    // Drops a session that failed mid-transfer; the next acquire() reconnects
+    public void invalidate(PooledSession pooled) {
+        pooled.disconnect();
+        pooled.lock.unlock();
+    }
+
+    public void closeAll() {
+        synchronized (this) {
+            Iterator<PooledSession> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                PooledSession pooled = it.next();
+                // Sessions in use stay pooled so evictIdle() closes them once released
+                if (pooled.lock.tryLock()) {
+                    try {
+                        pooled.disconnect();
+                        it.remove();
+                    } finally {
+                        pooled.lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    private void connect(PooledSession pooled, LinuxDestination destination, String privateKeyPath)
+            throws JSchException {
+        Session session = jschFor(privateKeyPath).getSession(
+                destination.getUser(), destination.getHost(), destination.getPort());
+
+        Properties config = new Properties();
+        boolean compressed = compression;
+        KnownHostsStore hosts = knownHosts;
+        String hostId = KnownHostsStore.hostIdOf(destination.getHost(), destination.getPort());
+        Map<String, String> negotiated = new HashMap<>();
+        if (hosts == null) {
+            config.put("StrictHostKeyChecking", "no");
+        } else {
+            // Trust on first use: an unknown host's key is stored, a known host must present it again
+            session.setHostKeyRepository(hosts);
+            config.put("StrictHostKeyChecking", hosts.isKnown(hostId) ? "yes" : "no");
+
+            Map<String, String> learned = hosts.getAlgorithms(hostId);
+            for (String name : NEGOTIATED_ALGORITHMS) {
+                String first = learned.containsKey(name) ? learned.get(name) : PREFERRED_ALGORITHMS.get(name);
+                if (first != null) {
+                    config.put(name, preferring(first, JSch.getConfig(name)));
+                }
+            }
+            session.setLogger(new NegotiationLogger(negotiated));
+        }
+        if (compressed) {
+            config.put("compression.s2c", "zlib@openssh.com,zlib,none");
+            config.put("compression.c2s", "zlib@openssh.com,zlib,none");
+        }
+        session.setConfig(config);
+        session.setTimeout(TIMEOUT);
+        session.setServerAliveInterval(KEEPALIVE_INTERVAL);
+        session.setServerAliveCountMax(KEEPALIVE_MAX_COUNT);
+        session.connect();
+        pooled.session = session;
+        pooled.compressed = compressed;
+        if (hosts != null) {
+            hosts.learnAlgorithms(hostId, negotiated);
+        }
+
+        Channel channel = session.openChannel("sftp");
+        channel.connect(TIMEOUT);
+        pooled.sftp = (ChannelSftp) channel;
+    }
+
+    // Moves one algorithm to the front of JSch's default proposal, keeping the rest as fallbacks
+    private static String preferring(String first, String defaults) {
+        StringBuilder proposal = new StringBuilder(first);
+        for (String algorithm : defaults.split(",")) {
+            if (!algorithm.equals(first)) {
+                proposal.append(',').append(algorithm);
+            }
+        }
+        return proposal.toString();
+    }
+
+    // Picks the negotiated algorithms out of JSch's key exchange log
+    private static class NegotiationLogger implements Logger {
+        private final Map<String, String> negotiated;
+
+        NegotiationLogger(Map<String, String> negotiated) {
+            this.negotiated = negotiated;
+        }
+
+        @Override
+        public boolean isEnabled(int level) {
+            return level == INFO;
+        }
+
+        @Override
+        public void log(int level, String message) {
+            if (message.startsWith("kex: algorithm: ")) {
+                negotiated.put("kex", message.substring(16).trim());
+            } else if (message.startsWith("kex: host key algorithm: ")) {
+                negotiated.put("server_host_key", message.substring(25).trim());
+            } else if (message.startsWith("kex: server->client ")) {
+                learnCipher(message, "s2c");
+            } else if (message.startsWith("kex: client->server ")) {
+                learnCipher(message, "c2s");
+            }
+        }
+
+        // "kex: server->client cipher: aes128-ctr MAC: hmac-sha2-256 compression: none"
+        private void learnCipher(String message, String direction) {
+            String[] words = message.split("\\s+");
+            for (int i = 2; i + 1 < words.length; i++) {
+                if (words[i].equals("cipher:")) {
+                    negotiated.put("cipher." + direction, words[i + 1]);
+                } else if (words[i].equals("MAC:")) {
+                    negotiated.put("mac." + direction, words[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static class CachedIdentity {
+        final JSch jsch;
+        final long modified;
+        final boolean locked; // passphrase-protected and not unlocked yet
+
+        CachedIdentity(JSch jsch, long modified, boolean locked) {
+            this.jsch = jsch;
+            this.modified = modified;
+            this.locked = locked;
+        }
+    }
+
+    // Parses a key ahead of the first transfer that needs it, e.g. right after import
+    public void preloadIdentity(String privateKeyPath) throws JSchException {
+        identityFor(privateKeyPath);
+    }
+
+    // True when the key needs its passphrase before it can be used
+    public boolean isLocked(String privateKeyPath) {
+        try {
+            return identityFor(privateKeyPath).locked;
+        } catch (JSchException e) {
+            // Unreadable keys are reported by the transfer itself
+            return false;
+        }
+    }
+
+    // Decrypts a passphrase-protected key and keeps it unlocked in memory until
+    // the process ends or the key is re-imported. Returns false for a wrong
+    // passphrase. The passphrase array is cleared.
+    public boolean unlockIdentity(String privateKeyPath, byte[] passphrase) throws JSchException {
+        try {
+            synchronized (identities) {
+                CachedIdentity unlocked = loadIdentity(privateKeyPath, passphrase);
+                if (unlocked.locked) {
+                    return false;
+                }
+                identities.put(privateKeyPath, unlocked);
+                return true;
+            }
+        } finally {
+            Arrays.fill(passphrase, (byte) 0);
+        }
+    }
+
+    private JSch jschFor(String privateKeyPath) throws JSchException {
+        CachedIdentity cached = identityFor(privateKeyPath);
+        if (cached.locked) {
+            throw new JSchException("SSH key " + new File(privateKeyPath).getName()
+                    + " is passphrase-protected and has not been unlocked");
+        }
+        return cached.jsch;
+    }
+
+    // Each key file is parsed once and only reloaded when it is re-imported
+    private CachedIdentity identityFor(String privateKeyPath) throws JSchException {
+        synchronized (identities) {
+            long modified = new File(privateKeyPath).lastModified();
+            CachedIdentity cached = identities.get(privateKeyPath);
+            if (cached == null || cached.modified != modified) {
+                cached = loadIdentity(privateKeyPath, null);
+                identities.put(privateKeyPath, cached);
+            }
+            return cached;
+        }
+    }
+
+    // PEM and OpenSSH-format RSA, ECDSA and Ed25519 keys are all read by JSch
+    private static CachedIdentity loadIdentity(String privateKeyPath, byte[] passphrase) throws JSchException {
+        long modified = new File(privateKeyPath).lastModified();
+        JSch jsch = new JSch();
+        jsch.addIdentity(privateKeyPath, passphrase);
+        boolean locked = false;
+        for (Identity identity : jsch.getIdentityRepository().getIdentities()) {
+            locked |= identity.isEncrypted();
+        }
+        return new CachedIdentity(jsch, modified, locked);
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<PooledSession> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                PooledSession pooled = it.next();
+                if (now - pooled.lastUsed < IDLE_TIMEOUT || !pooled.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    pooled.disconnect();
+                    it.remove();
+                } finally {
+                    pooled.lock.unlock();
+                }
+            }
+        }
+    }
+
+    // A session is authenticated as one identity, so the key path is part of the key
+    private static String keyOf(LinuxDestination destination, String privateKeyPath) {
+        return destination.getUser() + "@" + destination.getHost() + ":" + destination.getPort()
+                + " " + privateKeyPath;
+    }
+}
@@ -0,0 +1,384 @@
+package com.paste.android;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs outbound clipboard transfers on a small bounded pool. Transfers to
+// the same host run one after another while different hosts upload in
+// parallel, identical content already waiting for a destination is not sent
+// twice, and queued transfers can be cancelled.
+public class TransferQueue {
+    private static final int MAX_CONCURRENT_TRANSFERS = 4;
+    private static final int MAX_PENDING_TRANSFERS = 32;
+    private static final int THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final TransferQueue INSTANCE = new TransferQueue();
+
+    public static TransferQueue getInstance() {
+        return INSTANCE;
+    }
+
+    public interface FanOutCallback {
+        // Called once, on a transfer thread, after every destination has finished
+        void onComplete(List<Result> results);
+    }
+
+    public static class Result {
+        private final LinuxDestination destination;
+        private final String filename;
+        private final String error;
+
+        Result(LinuxDestination destination, String filename, String error) {
+            this.destination = destination;
+            this.filename = filename;
+            this.error = error;
+        }
+
+        public LinuxDestination getDestination() {
+            return destination;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public class Transfer {
+        private final String hostKey;
+        private final LinuxDestination destination;
+        private final String privateKeyPath;
+        private final String content;
+        private final boolean syncMode;
+        private final List<SSHClientHelper.TransferCallback> callbacks = new ArrayList<>();
+        private boolean started;
+        private boolean finished;
+        private boolean cancelled;
+
+        Transfer(String hostKey, LinuxDestination destination, String privateKeyPath, String content,
+                 boolean syncMode) {
+            this.hostKey = hostKey;
+            this.destination = destination;
+            this.privateKeyPath = privateKeyPath;
+            this.content = content;
+            this.syncMode = syncMode;
+        }
+
+        public LinuxDestination getDestination() {
+            return destination;
+        }
+
+        // Returns true if the transfer was still queued and will not run
+        public boolean cancel() {
+            List<SSHClientHelper.TransferCallback> toNotify;
+            synchronized (TransferQueue.this) {
+                if (started || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                pendingCount--;
+                toNotify = new ArrayList<>(callbacks);
+            }
+            for (SSHClientHelper.TransferCallback callback : toNotify) {
+                callback.onError("Transfer cancelled");
+            }
+            return true;
+        }
+
+        boolean isSameAs(LinuxDestination other, String otherKeyPath, String otherContent,
+                         boolean otherSyncMode) {
+            return !cancelled && !finished && syncMode == otherSyncMode
+                    && privateKeyPath.equals(otherKeyPath)
+                    && destination.getDirectory().equals(other.getDirectory())
+                    && content.hashCode() == otherContent.hashCode()
+                    && content.equals(otherContent);
+        }
+
+        void run() {
+            String filename = null;
+            String error = null;
+            boolean retryable = false;
+            boolean unchanged = false;
+            try {
+                if (syncMode) {
+                    filename = DeltaSync.SYNC_FILENAME;
+                    unchanged = !SSHClientHelper.sync(destination, privateKeyPath, content);
+                } else {
+                    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+                    filename = "clipboard_" + timestamp + ".txt";
+                    SSHClientHelper.upload(destination, privateKeyPath, content, filename);
+                }
+            } catch (JSchException e) {
+                error = "SSH Error: " + e.getMessage();
+                retryable = true;
+            } catch (SftpException e) {
+                error = "SFTP Error: " + e.getMessage();
+                retryable = SSHClientHelper.isRetryable(e);
+            } catch (Exception e) {
+                error = "Error: " + e.getMessage();
+            }
+
+            Outbox box = outbox;
+            if (box != null) {
+                try {
+                    if (error == null) {
+                        if (syncMode) {
+                            // An older queued copy must not overwrite what was just synced
+                            box.discard(destination, privateKeyPath, filename);
+                        }
+                        // The network is evidently fine, so flush anything left over
+                        box.retryNow();
+                    } else if (retryable) {
+                        box.add(destination, privateKeyPath, content, filename, syncMode);
+                        error += " (queued for retry)";
+                    }
+                } catch (RuntimeException e) {
+                    // The transfer itself is done; callers must still hear about it
+                    e.printStackTrace();
+                }
+            }
+
+            if (unchanged) {
+                filename += " (unchanged)";
+            }
+
+            List<SSHClientHelper.TransferCallback> toNotify;
+            synchronized (TransferQueue.this) {
+                finished = true;
+                toNotify = new ArrayList<>(callbacks);
+            }
+            for (SSHClientHelper.TransferCallback callback : toNotify) {
+                try {
+                    if (error == null) {
+                        callback.onSuccess(filename);
+                    } else {
+                        callback.onError(error);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    // Transfers waiting per user@host:port, plus the one currently running
+    private final Map<String, ArrayDeque<Transfer>> pending = new HashMap<>();
+    private final Map<String, Transfer> running = new HashMap<>();
+    private int pendingCount;
+    private volatile Outbox outbox;
+    private volatile boolean syncMode;
+
+    private TransferQueue() {
+        AtomicInteger count = new AtomicInteger();
+        // One drain task per host with work, so the task queue is bounded by
+        // the number of destinations; MAX_PENDING_TRANSFERS bounds the transfers
+        executor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_TRANSFERS, MAX_CONCURRENT_TRANSFERS,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "transfer-" + count.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Failed sends that may succeed later are handed to the outbox instead of being dropped
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    // In sync mode sends update one rolling file per destination with only the
+    // changed blocks instead of writing a new timestamped file
+    public void setSyncMode(boolean syncMode) {
+        this.syncMode = syncMode;
+    }
+
+    // Connects to each destination in the background so the next send to it
+    // goes over a warm session. Destinations whose key is missing or still
+    // locked are skipped.
+    public void warmUp(List<LinuxDestination> destinations, SshKeyStore keyStore) {
+        for (LinuxDestination destination : destinations) {
+            String keyPath = keyStore.getKeyPath(destination);
+            if (!new File(keyPath).isFile() || SshSessionPool.getInstance().isLocked(keyPath)) {
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    SSHClientHelper.warmUp(destination, keyPath);
+                } catch (JSchException | SftpException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    // Queues content for upload. Returns null and reports an error through
+    // the callback when the key is missing or too many transfers are already waiting.
+    public Transfer enqueue(LinuxDestination destination, String privateKeyPath, String content,
+                            SSHClientHelper.TransferCallback callback) {
+        if (!new File(privateKeyPath).isFile()) {
+            // Retrying cannot help, so this never reaches the outbox
+            callback.onError("SSH key not found: " + new File(privateKeyPath).getName());
+            return null;
+        }
+
+        // The key is part of it: destinations sharing a login but not an identity
+        // must neither share a queue nor be merged as duplicates
+        String hostKey = destination.getUser() + "@" + destination.getHost() + ":" + destination.getPort()
+                + " " + privateKeyPath;
+        boolean sync = syncMode;
+        synchronized (this) {
+            Transfer duplicate = findDuplicate(hostKey, destination, privateKeyPath, content, sync);
+            if (duplicate != null) {
+                duplicate.callbacks.add(callback);
+                return duplicate;
+            }
+
+            if (pendingCount >= MAX_PENDING_TRANSFERS) {
+                callback.onError("Too many transfers queued, try again later");
+                return null;
+            }
+
+            Transfer transfer = new Transfer(hostKey, destination, privateKeyPath, content, sync);
+            transfer.callbacks.add(callback);
+            ArrayDeque<Transfer> queue = pending.get(hostKey);
+            boolean idle = queue == null;
+            if (idle) {
+                queue = new ArrayDeque<>();
+                pending.put(hostKey, queue);
+            }
+            queue.add(transfer);
+            pendingCount++;
+            if (idle) {
+                executor.execute(() -> drain(hostKey));
+            }
+            return transfer;
+        }
+    }
+
+    // Uploads the same content to every destination. All transfers share the
+    // one String and stream its UTF-8 encoding, so no per-host copy is made.
+    // Hosts are uploaded to concurrently, each with its own key, and the
+    // callback gets one result per destination, in the order given.
+    public List<Transfer> enqueueAll(List<LinuxDestination> destinations, SshKeyStore keyStore,
+                                     String content, FanOutCallback callback) {
+        Result[] results = new Result[destinations.size()];
+        AtomicInteger remaining = new AtomicInteger(results.length);
+        List<Transfer> transfers = new ArrayList<>();
+
+        if (results.length == 0) {
+            callback.onComplete(Collections.emptyList());
+            return transfers;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            LinuxDestination destination = destinations.get(i);
+            int slot = i;
+            Transfer transfer = enqueue(destination, keyStore.getKeyPath(destination), content,
+                    new SSHClientHelper.TransferCallback() {
+                        @Override
+                        public void onSuccess(String filename) {
+                            complete(new Result(destination, filename, null));
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            complete(new Result(destination, null, error));
+                        }
+
+                        private void complete(Result result) {
+                            results[slot] = result;
+                            if (remaining.decrementAndGet() == 0) {
+                                callback.onComplete(Arrays.asList(results));
+                            }
+                        }
+                    });
+            if (transfer != null) {
+                transfers.add(transfer);
+            }
+        }
+        return transfers;
+    }
+
+    // Cancels every transfer that has not started yet; returns how many were dropped
+    public int cancelAll() {
+        List<Transfer> queued = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Transfer> queue : pending.values()) {
+                queued.addAll(queue);
+            }
+        }
+        int cancelled = 0;
+        for (Transfer transfer : queued) {
+            if (transfer.cancel()) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private Transfer findDuplicate(String hostKey, LinuxDestination destination, String privateKeyPath,
+                                   String content, boolean sync) {
+        Transfer current = running.get(hostKey);
+        if (current != null && current.isSameAs(destination, privateKeyPath, content, sync)) {
+            return current;
+        }
+        ArrayDeque<Transfer> queue = pending.get(hostKey);
+        if (queue != null) {
+            for (Transfer transfer : queue) {
+                if (transfer.isSameAs(destination, privateKeyPath, content, sync)) {
+                    return transfer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void drain(String hostKey) {
+        while (true) {
+            Transfer transfer;
+            synchronized (this) {
+                running.remove(hostKey);
+                ArrayDeque<Transfer> queue = pending.get(hostKey);
+                transfer = queue.poll();
+                while (transfer != null && transfer.cancelled) {
+                    transfer = queue.poll();
+                }
+                if (transfer == null) {
+                    pending.remove(hostKey);
+                    return;
+                }
+                transfer.started = true;
+                pendingCount--;
+                running.put(hostKey, transfer);
+            }
+            try {
+                transfer.run();
+            } catch (RuntimeException e) {
+                // Dying here would leave the host marked busy and its queue stuck for good
+                e.printStackTrace();
+            }
+        }
+    }
+}
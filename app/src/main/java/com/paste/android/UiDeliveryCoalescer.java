@@ -0,0 +1,54 @@
+package com.paste.android;
+
+import android.os.Handler;
+import android.view.Choreographer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Collapses bursts of received pastes into at most one listener call per
+// display frame. Only the newest paste is delivered; the ones it replaced
+// are still counted in getReceivedCount().
+public class UiDeliveryCoalescer implements Choreographer.FrameCallback {
+    private final Handler mainHandler;
+    private final AtomicReference<Consumer<HttpServerService.OnTextReceivedListener>> pending =
+            new AtomicReference<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private volatile HttpServerService.OnTextReceivedListener listener;
+
+    // Choreographer is per-thread, so the frame callback is registered from the main thread
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(this);
+
+    public UiDeliveryCoalescer(Handler mainHandler) {
+        this.mainHandler = mainHandler;
+    }
+
+    public void setListener(HttpServerService.OnTextReceivedListener listener) {
+        this.listener = listener;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    // Safe to call from any thread
+    public void submit(Consumer<HttpServerService.OnTextReceivedListener> delivery) {
+        receivedCount.incrementAndGet();
+        pending.set(delivery);
+        if (frameScheduled.compareAndSet(false, true)) {
+            mainHandler.post(scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled.set(false);
+        Consumer<HttpServerService.OnTextReceivedListener> delivery = pending.getAndSet(null);
+        HttpServerService.OnTextReceivedListener current = listener;
+        if (delivery != null && current != null) {
+            delivery.accept(current);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.paste.android;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Streams the UTF-8 encoding of a CharSequence one chunk at a time, so large
+// text can be uploaded without first materialising it as a byte[]. Unpaired
+// surrogates become '?', the same as String.getBytes().
+public class Utf8InputStream extends InputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024; // 32KB
+
+    private final CharBuffer chars;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes;
+    private boolean encoded;
+
+    public Utf8InputStream(CharSequence text) {
+        this(text, DEFAULT_CHUNK_SIZE);
+    }
+
+    public Utf8InputStream(CharSequence text, int chunkSize) {
+        // CharBuffer.wrap views the sequence; nothing is copied up front
+        chars = CharBuffer.wrap(text);
+        // Room for at least one full code point
+        bytes = ByteBuffer.allocate(Math.max(chunkSize, 4));
+        bytes.flip();
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+        return bytes.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < length && fill()) {
+            int n = Math.min(length - total, bytes.remaining());
+            bytes.get(buffer, offset + total, n);
+            total += n;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public int available() {
+        return bytes.remaining();
+    }
+
+    // Encodes the next chunk once the current one is used up; false at the end
+    private boolean fill() {
+        if (bytes.hasRemaining()) {
+            return true;
+        }
+        if (encoded) {
+            return false;
+        }
+        bytes.clear();
+        CoderResult result = encoder.encode(chars, bytes, true);
+        if (result.isUnderflow()) {
+            encoder.flush(bytes);
+            encoded = true;
+        }
+        bytes.flip();
+        return bytes.hasRemaining();
+    }
+}
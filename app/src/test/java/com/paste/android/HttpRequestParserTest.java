@@ -0,0 +1,159 @@
+package com.paste.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class HttpRequestParserTest {
+    private static final int MAX_IN_MEMORY = 64 * 1024;
+    private static final long MAX_BODY = 1024 * 1024;
+
+    private static HttpRequestParser newParser() {
+        return new HttpRequestParser(MAX_IN_MEMORY, MAX_BODY, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    // Feeds input the way HttpServerService does: readSize bytes per read,
+    // appended after whatever the parser left in the buffer
+    private static List<HttpRequest> parseAll(HttpRequestParser parser, byte[] input, int readSize)
+            throws IOException {
+        List<HttpRequest> requests = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(input.length);
+        buffer.limit(0);
+        for (int offset = 0; offset < input.length; offset += readSize) {
+            buffer.compact();
+            buffer.put(input, offset, Math.min(readSize, input.length - offset));
+            buffer.flip();
+            while (parser.parse(buffer)) {
+                requests.add(parser.takeRequest());
+            }
+        }
+        return requests;
+    }
+
+    private static byte[] post(String path, byte[] body) {
+        return concat(bytes("POST " + path + " HTTP/1.1\r\nHost: phone\r\nContent-Length: " + body.length
+                + "\r\n\r\n"), body);
+    }
+
+    @Test
+    public void contentLengthCountsBytesNotCharacters() throws IOException {
+        String text = "grüße → 世界 🚀";
+        byte[] body = bytes(text);
+        assertTrue(body.length > text.length());
+        byte[] input = concat(post("/paste", body), bytes("GET /status HTTP/1.1\r\n\r\n"));
+
+        List<HttpRequest> requests = parseAll(newParser(), input, input.length);
+
+        assertEquals(2, requests.size());
+        assertEquals(body.length, requests.get(0).getBody().length());
+        assertEquals(text, requests.get(0).getBody().getText());
+        assertEquals("/status", requests.get(1).getPath());
+    }
+
+    @Test
+    public void readBodyStopsAtContentLength() throws IOException {
+        String text = "ünïcödé body";
+        byte[] head = bytes("POST /paste HTTP/1.1\r\nContent-Length: " + bytes(text).length + "\r\n\r\n");
+        HttpRequestParser parser = newParser();
+
+        assertFalse(parser.parse(ByteBuffer.wrap(head)));
+        assertTrue(parser.isReadingBody());
+        // Trailing bytes belong to the next request and must stay in the stream
+        ByteArrayInputStream in = new ByteArrayInputStream(concat(bytes(text), bytes("GET /")));
+        while (parser.isReadingBody()) {
+            assertTrue(parser.readBody(in) > 0);
+        }
+
+        assertTrue(parser.parse(ByteBuffer.allocate(0)));
+        assertEquals(text, parser.takeRequest().getBody().getText());
+        assertEquals(5, in.available());
+    }
+
+    @Test
+    public void chunkedBodyIsReassembled() throws IOException {
+        String text = "hello wörld";
+        byte[] first = bytes("hello ");
+        byte[] second = bytes("wörld");
+        byte[] input = concat(
+                bytes("POST /paste HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"),
+                bytes(Integer.toHexString(first.length) + "\r\n"), first, bytes("\r\n"),
+                bytes(Integer.toHexString(second.length) + ";ext=1\r\n"), second, bytes("\r\n"),
+                bytes("0\r\nX-Trailer: ignored\r\n\r\n"),
+                bytes("GET /next HTTP/1.1\r\n\r\n"));
+
+        for (int readSize = 1; readSize <= input.length; readSize++) {
+            List<HttpRequest> requests = parseAll(newParser(), input, readSize);
+            assertEquals("read size " + readSize, 2, requests.size());
+            assertEquals(text, requests.get(0).getBody().getText());
+            assertEquals("/next", requests.get(1).getPath());
+        }
+    }
+
+    @Test
+    public void pipelinedRequestsSplitAcrossReads() throws IOException {
+        byte[] input = concat(
+                post("/paste", bytes("first")),
+                bytes("\r\n"), // stray CRLF between requests is tolerated
+                bytes("GET /clipboard HTTP/1.1\r\nConnection: close\r\n\r\n"),
+                post("/paste", bytes("thïrd")));
+
+        for (int readSize = 1; readSize <= input.length; readSize++) {
+            List<HttpRequest> requests = parseAll(newParser(), input, readSize);
+            assertEquals("read size " + readSize, 3, requests.size());
+            assertEquals("first", requests.get(0).getBody().getText());
+            assertEquals("GET", requests.get(1).getMethod());
+            assertFalse(requests.get(1).isKeepAlive());
+            assertEquals("thïrd", requests.get(2).getBody().getText());
+        }
+    }
+
+    @Test
+    public void oversizeHeadersAreRejected() throws IOException {
+        StringBuilder head = new StringBuilder("GET / HTTP/1.1\r\n");
+        while (head.length() <= 8192) {
+            head.append("X-Filler: ").append("0123456789012345678901234567890123456789").append("\r\n");
+        }
+        head.append("\r\n");
+
+        try {
+            parseAll(newParser(), bytes(head.toString()), 1000);
+            fail("Expected a 431");
+        } catch (HttpRequestParser.ParseException e) {
+            assertEquals(431, e.toResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void oversizeBodyIsRejected() throws IOException {
+        byte[] input = bytes("POST /paste HTTP/1.1\r\nContent-Length: " + (MAX_BODY + 1) + "\r\n\r\n");
+        try {
+            parseAll(newParser(), input, input.length);
+            fail("Expected a 413");
+        } catch (HttpRequestParser.ParseException e) {
+            assertEquals(413, e.toResponse().getStatus());
+        }
+    }
+}
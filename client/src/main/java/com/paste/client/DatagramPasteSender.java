@@ -0,0 +1,55 @@
+package com.paste.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+// Fire-and-forget sender for the phone's DatagramPasteReceiver: one UDP
+// datagram per paste, sent `copies` times since nothing is acknowledged.
+// The receiver drops the extra copies by sender id and sequence number.
+// The address may be a phone or a multicast group joined by several phones.
+public class DatagramPasteSender implements Closeable {
+    private static final int HEADER_SIZE = 11; // magic, version, sender, seq
+    private static final byte VERSION = 1;
+    // Fits one Ethernet frame, so a paste is never lost to IP fragmentation
+    public static final int MAX_TEXT_BYTES = 1472 - HEADER_SIZE;
+
+    private final InetAddress address;
+    private final int port;
+    private final int copies;
+    private final MulticastSocket socket;
+    private final int senderId = new SecureRandom().nextInt();
+    private int seq;
+
+    public DatagramPasteSender(String host, int port, int copies) throws IOException {
+        this.address = InetAddress.getByName(host);
+        this.port = port;
+        this.copies = Math.max(1, copies);
+        this.socket = new MulticastSocket();
+        // Multicast stays on the local network
+        socket.setTimeToLive(1);
+    }
+
+    public void send(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_BYTES) {
+            throw new IOException("Text is " + bytes.length + " bytes, one datagram holds " + MAX_TEXT_BYTES);
+        }
+        ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+        datagram.put((byte) 'P').put((byte) 'T').put(VERSION).putInt(senderId).putInt(++seq).put(bytes);
+        DatagramPacket packet = new DatagramPacket(datagram.array(), datagram.position(), address, port);
+        for (int i = 0; i < copies; i++) {
+            socket.send(packet);
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
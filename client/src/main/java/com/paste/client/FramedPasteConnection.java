@@ -0,0 +1,158 @@
+package com.paste.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Client side of the phone's FramedPasteServer: one TEXT frame per line,
+// streamed without waiting as long as fewer than the server's window are
+// unacknowledged. If the connection drops mid-batch and PasteClient retries
+// the same batch, only the lines the server had not yet acknowledged are
+// sent again. Not thread-safe.
+public class FramedPasteConnection implements PasteTransport {
+    private static final byte TYPE_TEXT = 0x01;
+    private static final byte TYPE_HELLO = (byte) 0x80;
+    private static final byte TYPE_ACK = (byte) 0x81;
+    private static final byte TYPE_ERROR = (byte) 0x82;
+    private static final int HEADER_SIZE = 9; // length, type, id
+    private static final int MAX_PAYLOAD = 65536; // 64KB
+    private static final int CONNECT_TIMEOUT = 5000; // milliseconds
+    private static final int READ_TIMEOUT = 30000; // milliseconds
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private int window;
+    private int nextId;
+    private int ackedId;
+    private int connects;
+    private List<String> resumeBatch;
+    private int resumeFrom;
+
+    public FramedPasteConnection(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public int getConnectCount() {
+        return connects;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket != null;
+    }
+
+    @Override
+    public void send(List<String> lines) throws IOException {
+        if (lines != resumeBatch) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD) {
+                    throw new RejectedException("Line " + (i + 1) + " is longer than " + MAX_PAYLOAD + " bytes");
+                }
+            }
+            resumeBatch = lines;
+            resumeFrom = 0;
+        }
+        if (socket == null) {
+            open();
+        }
+        try {
+            int base = resumeFrom;
+            int firstId = nextId + 1;
+            for (int i = base; i < lines.size(); i++) {
+                byte[] payload = lines.get(i).getBytes(StandardCharsets.UTF_8);
+                while (nextId - ackedId >= window) {
+                    out.flush();
+                    readAck();
+                    resumeFrom = base + (ackedId - firstId + 1);
+                }
+                out.writeInt(HEADER_SIZE - 4 + payload.length);
+                out.writeByte(TYPE_TEXT);
+                out.writeInt(++nextId);
+                out.write(payload);
+            }
+            out.flush();
+            while (ackedId != nextId) {
+                readAck();
+                resumeFrom = base + (ackedId - firstId + 1);
+            }
+            resumeBatch = null;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            socket = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Socket opened = new Socket();
+        try {
+            opened.setTcpNoDelay(true);
+            opened.setSoTimeout(READ_TIMEOUT);
+            opened.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        socket = opened;
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        connects++;
+        try {
+            int length = in.readInt();
+            byte type = in.readByte();
+            int id = in.readInt();
+            in.skipBytes(length - (HEADER_SIZE - 4));
+            if (type != TYPE_HELLO || id <= 0) {
+                throw new IOException("Not a framed paste server");
+            }
+            window = id;
+            // Ids only need to increase within a connection
+            nextId = 0;
+            ackedId = 0;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void readAck() throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_SIZE - 4 || length > HEADER_SIZE - 4 + MAX_PAYLOAD) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte type = in.readByte();
+        int id = in.readInt();
+        byte[] payload = new byte[length - (HEADER_SIZE - 4)];
+        in.readFully(payload);
+        if (type == TYPE_ERROR) {
+            throw new RejectedException("Server refused frame " + id + ": "
+                    + new String(payload, StandardCharsets.UTF_8));
+        }
+        if (type != TYPE_ACK) {
+            throw new IOException("Unexpected frame type " + type);
+        }
+        ackedId = id;
+    }
+}
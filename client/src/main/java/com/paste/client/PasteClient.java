@@ -0,0 +1,194 @@
+package com.paste.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Sends lines to the phone over one PasteTransport. Lines submitted within
+// batchWindowMillis of the first one travel together in a single send (one
+// POST /paste/batch over HTTP), so a burst costs one round trip and, over
+// HTTP, one UI update. Failed batches are retried with exponential backoff,
+// honouring Retry-After on 503; a batch is dropped only after maxRetries.
+public class PasteClient implements Closeable {
+    private static final int MAX_BATCH_LINES = 1000; // PasteBatchReader.MAX_SNIPPETS on the phone
+    private static final int MAX_BATCH_BYTES = 65536; // 64KB stays in the server's memory
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final long INITIAL_BACKOFF = 100; // milliseconds
+    private static final long MAX_BACKOFF = 5000; // milliseconds
+
+    public interface Listener {
+        void onSent(int lines);
+
+        void onDropped(List<String> lines, String reason);
+    }
+
+    private final PasteTransport transport;
+    private final long batchWindowMillis;
+    private final int maxRetries;
+    private final Listener listener;
+    // Bounded so a reader blocks instead of buffering without limit while the phone is away
+    private final BlockingQueue<Line> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread sender;
+    // Taken from the queue but did not fit the last batch; starts the next one. Sender thread only.
+    private Line carried;
+    private volatile boolean closing;
+    private long sentLines;
+    private long sentBatches;
+
+    // A queued line with its size on the wire: UTF-8 plus the newline, counted once at submit()
+    private static final class Line {
+        final String text;
+        final int bytes;
+
+        Line(String text) {
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+    }
+
+    public PasteClient(PasteTransport transport, long batchWindowMillis, int maxRetries, Listener listener) {
+        this.transport = transport;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxRetries = maxRetries;
+        this.listener = listener;
+        this.sender = new Thread(this::runSender, "paste-client-sender");
+        // close() does the flushing; an idle sender should not keep the JVM alive
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public void submit(String line) throws InterruptedException {
+        if (closing) {
+            throw new IllegalStateException("Client is closed");
+        }
+        // Blank lines are skipped by the server anyway
+        if (!line.trim().isEmpty()) {
+            queue.put(new Line(line));
+        }
+    }
+
+    public synchronized long getSentLines() {
+        return sentLines;
+    }
+
+    public synchronized long getSentBatches() {
+        return sentBatches;
+    }
+
+    // Sends whatever is still queued, then closes the connection
+    @Override
+    public void close() {
+        closing = true;
+        sender.interrupt();
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.close();
+    }
+
+    private void runSender() {
+        List<String> batch = new ArrayList<>();
+        while (!closing || carried != null || !queue.isEmpty()) {
+            try {
+                Line first = carried;
+                carried = null;
+                if (first == null) {
+                    first = closing ? queue.poll() : queue.take();
+                }
+                if (first == null) {
+                    break;
+                }
+                batch.add(first.text);
+                fillBatch(batch, first.bytes);
+            } catch (InterruptedException e) {
+                // close() woke us; drain the queue without waiting for more
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    // Takes more lines until the window closes or the batch is full
+    private void fillBatch(List<String> batch, int bytes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        while (batch.size() < MAX_BATCH_LINES) {
+            Line next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (closing || remaining <= 0) {
+                    return;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            if (bytes + next.bytes > MAX_BATCH_BYTES) {
+                carried = next;
+                return;
+            }
+            batch.add(next.text);
+            bytes += next.bytes;
+        }
+    }
+
+    private void send(List<String> batch) {
+        long backoff = INITIAL_BACKOFF;
+        String reason = null;
+        boolean staleRetried = false;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            boolean reused = transport.isOpen();
+            try {
+                transport.send(batch);
+                synchronized (this) {
+                    sentLines += batch.size();
+                    sentBatches++;
+                }
+                listener.onSent(batch.size());
+                return;
+            } catch (PasteTransport.RejectedException e) {
+                // The server will not accept this batch however often we ask
+                reason = e.getMessage();
+                break;
+            } catch (PasteTransport.BusyException e) {
+                reason = e.getMessage();
+                if (e.getRetryAfterSeconds() > 0) {
+                    backoff = e.getRetryAfterSeconds() * 1000L;
+                }
+            } catch (IOException e) {
+                reason = e.toString();
+                if (reused && !staleRetried) {
+                    // The server probably closed the idle socket; retry on a fresh one straight away
+                    staleRetried = true;
+                    attempt--;
+                    continue;
+                }
+            }
+            if (attempt < maxRetries && !sleep(backoff)) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        listener.onDropped(new ArrayList<>(batch), reason);
+    }
+
+    // Backoff sleeps are cut short by close(), but the batch still gets its remaining attempts
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return closing;
+        }
+    }
+}
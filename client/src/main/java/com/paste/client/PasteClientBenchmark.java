@@ -0,0 +1,122 @@
+package com.paste.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+// Throughput of the three ways to get N lines onto the phone:
+//   script     paste-to-android.sh -t per line: one curl process and TCP connection each
+//   keepalive  one POST /paste per line over a single PasteConnection
+//   batched    PasteClient, lines grouped into POST /paste/batch requests
+//   framed     PasteClient over the binary framed protocol (only with -F <port>)
+//
+// Every run really pastes N lines per mode into the phone's UI and history.
+// ./gradlew :client:benchmark -Pargs="-i 192.168.1.100 -n 200"
+public class PasteClientBenchmark {
+    private static final int DEFAULT_COUNT = 200;
+    private static final String DEFAULT_SCRIPT = "paste-to-android.sh";
+
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        int port = 8080;
+        int framedPort = 0;
+        int count = DEFAULT_COUNT;
+        String script = DEFAULT_SCRIPT;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-i":
+                    host = args[i + 1];
+                    break;
+                case "-p":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-F":
+                    framedPort = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-n":
+                    count = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-s":
+                    script = args[i + 1];
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (host == null) {
+            System.err.println("Usage: PasteClientBenchmark -i <android_ip> [-p <port>] [-F <framed_port>] [-n <lines>]"
+                    + " [-s <script>]");
+            System.exit(1);
+        }
+
+        System.out.println("Sending " + count + " lines per mode to " + host + ":" + port);
+        System.out.println(String.format(Locale.US, "%-10s %10s %12s %12s", "mode", "seconds", "lines/s", "connections"));
+        if (new File(script).canExecute()) {
+            runScript(host, port, count, script);
+        } else {
+            System.out.println(String.format(Locale.US, "%-10s skipped, %s not found or not executable", "script", script));
+        }
+        runKeepAlive(host, port, count);
+        runBatched("batched", new PasteConnection(host, port), count);
+        if (framedPort > 0) {
+            runBatched("framed", new FramedPasteConnection(host, framedPort), count);
+        }
+    }
+
+    private static void runScript(String host, int port, int count, String script)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Process process = new ProcessBuilder(script, "-i", host, "-p", String.valueOf(port),
+                    "-t", "script " + i)
+                    .redirectOutput(new File("/dev/null"))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            if (process.waitFor() != 0) {
+                throw new IOException("Script failed on line " + i);
+            }
+        }
+        report("script", count, start, count);
+    }
+
+    private static void runKeepAlive(String host, int port, int count) throws IOException {
+        try (PasteConnection connection = new PasteConnection(host, port)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                byte[] body = ("keepalive " + i).getBytes(StandardCharsets.UTF_8);
+                PasteConnection.Response response = connection.post("/paste", "text/plain; charset=utf-8", body);
+                if (response.getStatus() != 200) {
+                    throw new IOException("HTTP " + response.getStatus() + " on line " + i);
+                }
+            }
+            report("keepalive", count, start, connection.getConnectCount());
+        }
+    }
+
+    private static void runBatched(String mode, PasteTransport transport, int count) throws InterruptedException {
+        PasteClient client = new PasteClient(transport, 20, 5, new PasteClient.Listener() {
+            @Override
+            public void onSent(int lines) {
+            }
+
+            @Override
+            public void onDropped(List<String> lines, String reason) {
+                System.err.println("Dropped " + lines.size() + " line(s): " + reason);
+            }
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            client.submit(mode + " " + i);
+        }
+        client.close();
+        report(mode, (int) client.getSentLines(), start, transport.getConnectCount());
+    }
+
+    private static void report(String mode, int lines, long startNanos, int connections) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println(String.format(Locale.US, "%-10s %10.3f %12.1f %12d",
+                mode, seconds, lines / seconds, connections));
+    }
+}
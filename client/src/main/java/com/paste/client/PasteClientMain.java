@@ -0,0 +1,172 @@
+package com.paste.client;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// paste-client -i <android_ip> [-p <port> | -F <framed_port> | -U <udp_port> [-c <copies>]] [-f <fifo>]
+//              [-w <ms>] [-r <retries>] [-v]
+//
+// Reads lines from stdin, or from a named pipe that is reopened every time
+// its writer closes it, and sends each line to the phone as one paste.
+public class PasteClientMain {
+    private static final int DEFAULT_PORT = 8080;
+    private static final long DEFAULT_BATCH_WINDOW = 20; // milliseconds
+    private static final int DEFAULT_RETRIES = 5;
+    private static final int DEFAULT_UDP_COPIES = 2;
+
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        int port = DEFAULT_PORT;
+        int framedPort = 0;
+        int udpPort = 0;
+        int copies = DEFAULT_UDP_COPIES;
+        String fifo = null;
+        long batchWindow = DEFAULT_BATCH_WINDOW;
+        int retries = DEFAULT_RETRIES;
+        boolean verbose = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-i":
+                        host = args[++i];
+                        break;
+                    case "-p":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "-F":
+                        framedPort = Integer.parseInt(args[++i]);
+                        break;
+                    case "-U":
+                        udpPort = Integer.parseInt(args[++i]);
+                        break;
+                    case "-c":
+                        copies = Integer.parseInt(args[++i]);
+                        break;
+                    case "-f":
+                        fifo = args[++i];
+                        break;
+                    case "-w":
+                        batchWindow = Long.parseLong(args[++i]);
+                        break;
+                    case "-r":
+                        retries = Integer.parseInt(args[++i]);
+                        break;
+                    case "-v":
+                        verbose = true;
+                        break;
+                    default:
+                        usage();
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            usage();
+        }
+        if (host == null) {
+            usage();
+        }
+
+        if (udpPort > 0) {
+            sendDatagrams(host, udpPort, copies, fifo, verbose);
+            return;
+        }
+
+        boolean log = verbose;
+        PasteClient.Listener listener = new PasteClient.Listener() {
+            @Override
+            public void onSent(int lines) {
+                if (log) {
+                    System.err.println("Sent " + lines + " line(s)");
+                }
+            }
+
+            @Override
+            public void onDropped(List<String> lines, String reason) {
+                System.err.println("Dropped " + lines.size() + " line(s): " + reason);
+            }
+        };
+
+        PasteTransport transport = framedPort > 0
+                ? new FramedPasteConnection(host, framedPort)
+                : new PasteConnection(host, port);
+        PasteClient client = new PasteClient(transport, batchWindow, retries, listener);
+        // Runs on end of input and on Ctrl-C alike, so queued lines are still sent
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            client.close();
+            System.err.println("Sent " + client.getSentLines() + " line(s) in " + client.getSentBatches()
+                    + " batch(es) over " + transport.getConnectCount() + " connection(s)");
+        }));
+
+        if (fifo == null) {
+            pump(System.in, client);
+        } else {
+            // A writer closing the pipe (echo foo > fifo) ends our input; wait for the next one
+            while (true) {
+                try (InputStream in = new FileInputStream(fifo)) {
+                    pump(in, client);
+                }
+            }
+        }
+    }
+
+    // Nothing to batch or retry: each line goes out as soon as it is read
+    private static void sendDatagrams(String host, int port, int copies, String fifo, boolean verbose)
+            throws IOException {
+        try (DatagramPasteSender sender = new DatagramPasteSender(host, port, copies)) {
+            do {
+                try (InputStream in = fifo == null ? System.in : new FileInputStream(fifo)) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+                        try {
+                            sender.send(line);
+                            if (verbose) {
+                                System.err.println("Sent " + line.length() + " character(s)");
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Dropped line: " + e.getMessage());
+                        }
+                    }
+                }
+            } while (fifo != null);
+        }
+    }
+
+    private static void pump(InputStream in, PasteClient client) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            client.submit(line);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: paste-client -i <android_ip> [-p <port> | -F <framed_port> | -U <udp_port> [-c <copies>]]"
+                + " [-f <fifo>] [-w <ms>] [-r <retries>] [-v]");
+        System.err.println();
+        System.err.println("Sends each line of stdin (or of a named pipe) to the phone as one paste,");
+        System.err.println("over a single keep-alive connection.");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println("  -i    IP address of the Android device (required)");
+        System.err.println("  -p    Port number (default: " + DEFAULT_PORT + ")");
+        System.err.println("  -F    Use the binary framed protocol on this port instead of HTTP");
+        System.err.println("  -U    Send each line as one UDP datagram to this port, unacknowledged;");
+        System.err.println("        -i may be a multicast group to reach several phones");
+        System.err.println("  -c    Copies of each datagram, for lossy networks (default: " + DEFAULT_UDP_COPIES + ")");
+        System.err.println("  -f    Read from this named pipe instead of stdin, reopening it after each writer");
+        System.err.println("  -w    Batch window: lines arriving within this many ms share one request (default: "
+                + DEFAULT_BATCH_WINDOW + ")");
+        System.err.println("  -r    Retries before a batch is dropped (default: " + DEFAULT_RETRIES + ")");
+        System.err.println("  -v    Report every batch sent");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,241 @@
+package com.paste.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+// One HTTP/1.1 keep-alive connection to the phone's HttpServerService.
+// The socket is opened on first use and reused until the server says it
+// will close it (Connection: close, or the Keep-Alive max is used up) or
+// it has been idle longer than the server's Keep-Alive timeout. Not thread-safe.
+public class PasteConnection implements PasteTransport {
+    private static final int CONNECT_TIMEOUT = 5000; // milliseconds
+    private static final int READ_TIMEOUT = 30000; // milliseconds
+    private static final int MAX_HEADER_LINE = 8192;
+    private static final long IDLE_MARGIN = 1000; // close this long before the server would
+    private static final String BATCH_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    public static class Response {
+        private final int status;
+        private final String body;
+        private final int retryAfterSeconds;
+
+        Response(int status, String body, int retryAfterSeconds) {
+            this.status = status;
+            this.body = body;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        // 0 when the server sent no Retry-After
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private long lastUsed;
+    private long idleTimeout = Long.MAX_VALUE;
+    private int connects;
+
+    public PasteConnection(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public int getConnectCount() {
+        return connects;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket != null && System.currentTimeMillis() - lastUsed < idleTimeout;
+    }
+
+    // One POST /paste/batch, one snippet per line
+    @Override
+    public void send(List<String> lines) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            body.write(bytes, 0, bytes.length);
+            body.write('\n');
+        }
+        Response response = post("/paste/batch", BATCH_CONTENT_TYPE, body.toByteArray());
+        if (response.getStatus() == 503) {
+            throw new BusyException("HTTP 503: " + response.getBody(), response.getRetryAfterSeconds());
+        }
+        if (response.getStatus() != 200) {
+            throw new RejectedException("HTTP " + response.getStatus() + ": " + response.getBody());
+        }
+    }
+
+    public Response post(String path, String contentType, byte[] body) throws IOException {
+        if (!isOpen()) {
+            close();
+            open();
+        }
+        String head = "POST " + path + " HTTP/1.1\r\n" +
+                "Host: " + host + ":" + port + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "\r\n";
+        try {
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            return readResponse();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            socket = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Socket opened = new Socket();
+        try {
+            opened.setTcpNoDelay(true);
+            opened.setSoTimeout(READ_TIMEOUT);
+            opened.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        socket = opened;
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+        idleTimeout = Long.MAX_VALUE;
+        connects++;
+    }
+
+    private Response readResponse() throws IOException {
+        String statusLine = readLine();
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Bad status line: " + statusLine);
+        }
+        int status;
+        try {
+            status = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad status line: " + statusLine);
+        }
+
+        int contentLength = 0;
+        int retryAfter = 0;
+        boolean keepAlive = !parts[0].equals("HTTP/1.0");
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            switch (name) {
+                case "content-length":
+                    contentLength = parseInt(value, 0);
+                    break;
+                case "retry-after":
+                    retryAfter = parseInt(value, 0);
+                    break;
+                case "connection":
+                    keepAlive = value.equalsIgnoreCase("keep-alive");
+                    break;
+                case "keep-alive":
+                    applyKeepAlive(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = in.read(body, read, contentLength - read);
+            if (n < 0) {
+                throw new EOFException("Connection closed mid-response");
+            }
+            read += n;
+        }
+
+        lastUsed = System.currentTimeMillis();
+        if (!keepAlive) {
+            close();
+        }
+        return new Response(status, new String(body, StandardCharsets.UTF_8), retryAfter);
+    }
+
+    // "timeout=5, max=99": stop reusing the socket just before the server drops it
+    private void applyKeepAlive(String value) {
+        for (String param : value.split(",")) {
+            String[] pair = param.trim().split("=", 2);
+            if (pair.length != 2) {
+                continue;
+            }
+            if (pair[0].equals("timeout")) {
+                idleTimeout = Math.max(0, parseInt(pair[1], 0) * 1000L - IDLE_MARGIN);
+            } else if (pair[0].equals("max") && parseInt(pair[1], 1) <= 0) {
+                idleTimeout = 0;
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Connection closed by server");
+            }
+            if (line.size() == MAX_HEADER_LINE) {
+                throw new IOException("Response header line too long");
+            }
+            line.write(b);
+        }
+        String text = line.toString("ISO-8859-1");
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
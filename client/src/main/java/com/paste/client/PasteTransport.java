@@ -0,0 +1,48 @@
+package com.paste.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// How PasteClient gets a batch of lines to the phone: HTTP (PasteConnection)
+// or the binary framed protocol (FramedPasteConnection). Any other
+// IOException means the connection failed and the batch may be retried.
+public interface PasteTransport extends Closeable {
+    // Returns once the phone has accepted every line
+    void send(List<String> lines) throws IOException;
+
+    // True when the next send will go out on an already open socket
+    boolean isOpen();
+
+    // TCP connections opened so far; one per session when reuse works
+    int getConnectCount();
+
+    @Override
+    void close();
+
+    // The phone refused the lines; sending them again will not help
+    class RejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    // The phone is overloaded and asked us to come back later
+    class BusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int retryAfterSeconds;
+
+        public BusyException(String message, int retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        // 0 when the server did not say
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -1,25 +1,40 @@
 #!/bin/bash
 
 # paste-to-android.sh
-# Script to send text from Linux terminal to Android device
+# Script to send text from Linux terminal to Android device,
+# or (-w) to receive text shared from the device
 
 # Default values
 ANDROID_IP=""
 PORT="8080"
-TEXT=""
+TEXTS=()
+BATCH=false
+COMPRESS=false
+WATCH=false
+TOKEN=""
 
 # Display usage
 usage() {
     echo "Usage: $0 -i <android_ip> [-p <port>] -t <text>"
+    echo "       $0 -i <android_ip> [-p <port>] -b < lines.txt"
+    echo "       $0 -i <android_ip> [-p <port>] -k <token> -w"
     echo ""
     echo "Options:"
     echo "  -i    IP address of the Android device (required)"
     echo "  -p    Port number (default: 8080)"
-    echo "  -t    Text to send (required)"
+    echo "  -t    Text to send (required, repeat to send several over one connection)"
+    echo "  -b    Send stdin as one batch to /paste/batch, one snippet per line"
+    echo "  -z    Gzip-compress the text before sending"
+    echo "  -w    Watch for text shared from the phone and print each one as it arrives"
+    echo "  -k    Token for -w, shown in the app once clipboard sharing is turned on"
     echo ""
     echo "Examples:"
     echo "  $0 -i 192.168.1.100 -t \"Hello Android\""
     echo "  $0 -i 192.168.1.100 -p 8080 -t \"Your text here\""
+    echo "  $0 -i 192.168.1.100 -t \"first\" -t \"second\""
+    echo "  tail -n 20 build.log | $0 -i 192.168.1.100 -b"
+    echo "  $0 -i 192.168.1.100 -z -t \"\$(cat large.log)\""
+    echo "  $0 -i 192.168.1.100 -k 3f2a...9c -w"
     echo ""
     echo "Shorthand:"
     echo "  curl -X POST http://192.168.1.100:8080/paste -d \"Your text here\""
@@ -27,25 +42,89 @@ usage() {
 }
 
 # Parse command line arguments
-while getopts "i:p:t:h" opt; do
+while getopts "i:p:t:bzwk:h" opt; do
     case $opt in
         i) ANDROID_IP="$OPTARG" ;;
         p) PORT="$OPTARG" ;;
-        t) TEXT="$OPTARG" ;;
+        t) TEXTS+=("$OPTARG") ;;
+        b) BATCH=true ;;
+        z) COMPRESS=true ;;
+        w) WATCH=true ;;
+        k) TOKEN="$OPTARG" ;;
         h) usage ;;
         \?) usage ;;
     esac
 done
 
+# Long-poll GET /clipboard: each request is held open until the phone
+# shares something new, then asked again from the returned sequence number
+if [ "$WATCH" = true ] && [ -n "$ANDROID_IP" ]; then
+    HEADERS=$(mktemp)
+    trap 'rm -f "$HEADERS"' EXIT
+    SEQ=0
+    echo "Watching $ANDROID_IP:$PORT for shared text (Ctrl-C to stop)..." >&2
+    while true; do
+        : > "$HEADERS"
+        body=$(curl -s -D "$HEADERS" --max-time 90 -H "X-Paste-Token: $TOKEN" \
+            "http://$ANDROID_IP:$PORT/clipboard?since=$SEQ")
+        status=$(head -n 1 "$HEADERS" | cut -d' ' -f2)
+        if [ "$status" = "200" ]; then
+            printf '%s\n' "$body"
+        fi
+        if [ "$status" = "200" ] || [ "$status" = "204" ]; then
+            SEQ=$(grep -i '^X-Clip-Seq:' "$HEADERS" | tr -dc '0-9')
+        elif [ "$status" = "403" ] || [ "$status" = "404" ]; then
+            # Retrying will not help until the token or the app setting changes
+            echo "Error: $body" >&2
+            exit 1
+        else
+            # Server unreachable or busy, try again shortly
+            sleep 1
+        fi
+    done
+fi
+
 # Validate required arguments
-if [ -z "$ANDROID_IP" ] || [ -z "$TEXT" ]; then
+if [ -z "$ANDROID_IP" ] || { [ "$BATCH" = false ] && [ ${#TEXTS[@]} -eq 0 ]; }; then
     echo "Error: Android IP and text are required"
     usage
 fi
 
+# Build one curl invocation; --next keeps every paste on the same
+# keep-alive connection instead of reconnecting per snippet
+URL="http://$ANDROID_IP:$PORT/paste"
+CURL_ARGS=()
+if [ "$COMPRESS" = true ]; then
+    TMP_DIR=$(mktemp -d)
+    trap 'rm -rf "$TMP_DIR"' EXIT
+fi
+if [ "$BATCH" = true ]; then
+    # All stdin lines travel in one request and reach the UI as one update
+    if [ "$COMPRESS" = true ]; then
+        gzip -c > "$TMP_DIR/batch.gz"
+        CURL_ARGS+=(-s -X POST "$URL/batch" -H "Content-Type: text/plain" -H "Content-Encoding: gzip"
+            --data-binary "@$TMP_DIR/batch.gz" -w "\n")
+    else
+        CURL_ARGS+=(-s -X POST "$URL/batch" -H "Content-Type: text/plain" --data-binary @- -w "\n")
+    fi
+fi
+i=0
+for text in "${TEXTS[@]}"; do
+    if [ ${#CURL_ARGS[@]} -gt 0 ]; then
+        CURL_ARGS+=(--next)
+    fi
+    if [ "$COMPRESS" = true ]; then
+        i=$((i + 1))
+        printf '%s' "$text" | gzip -c > "$TMP_DIR/$i.gz"
+        CURL_ARGS+=(-s -X POST "$URL" -H "Content-Encoding: gzip" --data-binary "@$TMP_DIR/$i.gz" -w "\n")
+    else
+        CURL_ARGS+=(-s -X POST "$URL" -d "$text" -w "\n")
+    fi
+done
+
 # Send the text
 echo "Sending text to Android device at $ANDROID_IP:$PORT..."
-response=$(curl -s -X POST "http://$ANDROID_IP:$PORT/paste" -d "$TEXT")
+response=$(curl "${CURL_ARGS[@]}")
 
 if [ $? -eq 0 ]; then
     echo "Success: $response"